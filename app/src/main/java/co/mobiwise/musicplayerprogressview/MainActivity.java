@@ -5,10 +5,12 @@ import android.os.Bundle;
 import android.view.View;
 
 import co.mobiwise.playerview.MusicPlayerView;
+import co.mobiwise.playerview.SpectrumBuffer;
 
 public class MainActivity extends Activity {
 
   MusicPlayerView mpv;
+  SyntheticPcmSource pcmSource;
 
   @Override protected void onCreate(Bundle savedInstanceState) {
     super.onCreate(savedInstanceState);
@@ -26,5 +28,19 @@ public class MainActivity extends Activity {
         }
       }
     });
+
+    SpectrumBuffer spectrum = new SpectrumBuffer(64);
+    mpv.setSpectrumBuffer(spectrum);
+    pcmSource = new SyntheticPcmSource(spectrum);
+  }
+
+  @Override protected void onResume() {
+    super.onResume();
+    pcmSource.start();
+  }
+
+  @Override protected void onPause() {
+    pcmSource.stop();
+    super.onPause();
   }
 }
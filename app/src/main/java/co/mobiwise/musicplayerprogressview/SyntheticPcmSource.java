@@ -0,0 +1,128 @@
+/*
+* Copyright (C) 2015 Mert Şimşek
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package co.mobiwise.musicplayerprogressview;
+
+import co.mobiwise.playerview.SpectrumBuffer;
+
+/**
+ * Writes spectrum of generated tones into a SpectrumBuffer on its own thread, so
+ * spectrum ring works without audio hardware.
+ */
+public final class SyntheticPcmSource implements Runnable {
+
+  private static final int SAMPLE_RATE = 44100;
+  private static final int FRAME_INTERVAL_MS = 16;
+
+  private final SpectrumBuffer mBuffer;
+  private final int mBinCount;
+  private final int mSampleCount;
+  private final float[] mSamples;
+  private final float[] mMagnitudes;
+
+  /**
+   * DFT tables. Bin k uses frequency (k + 1) * SAMPLE_RATE / sampleCount.
+   */
+  private final float[] mCos;
+  private final float[] mSin;
+
+  private volatile Thread mThread;
+  private double mTimeSeconds;
+
+  public SyntheticPcmSource(SpectrumBuffer buffer) {
+    mBuffer = buffer;
+    mBinCount = buffer.getBinCount();
+    mSampleCount = mBinCount * 2 + 2;
+    mSamples = new float[mSampleCount];
+    mMagnitudes = new float[mBinCount];
+    mCos = new float[mBinCount * mSampleCount];
+    mSin = new float[mBinCount * mSampleCount];
+    for (int k = 0; k < mBinCount; k++) {
+      for (int n = 0; n < mSampleCount; n++) {
+        double angle = 2 * Math.PI * (k + 1) * n / mSampleCount;
+        mCos[k * mSampleCount + n] = (float) Math.cos(angle);
+        mSin[k * mSampleCount + n] = (float) Math.sin(angle);
+      }
+    }
+  }
+
+  /**
+   * Starts writing frames. Does nothing if already started.
+   */
+  public synchronized void start() {
+    if (mThread != null) return;
+    mThread = new Thread(this, "SyntheticPcmSource");
+    mThread.setDaemon(true);
+    mThread.start();
+  }
+
+  /**
+   * Stops writing frames.
+   */
+  public synchronized void stop() {
+    Thread thread = mThread;
+    mThread = null;
+    if (thread != null) thread.interrupt();
+  }
+
+  @Override public void run() {
+    Thread current = Thread.currentThread();
+    while (mThread == current) {
+      generate();
+      calculateMagnitudes();
+      mBuffer.write(mMagnitudes);
+      try {
+        Thread.sleep(FRAME_INTERVAL_MS);
+      } catch (InterruptedException e) {
+        return;
+      }
+    }
+  }
+
+  /**
+   * Fills samples with three tones which sweep over spectrum and a little noise.
+   */
+  private void generate() {
+    double nyquist = SAMPLE_RATE / 2.0;
+    double bass = nyquist * (0.02 + 0.015 * Math.sin(mTimeSeconds * 0.7));
+    double mid = nyquist * (0.25 + 0.2 * Math.sin(mTimeSeconds * 0.31));
+    double high = nyquist * (0.6 + 0.3 * Math.sin(mTimeSeconds * 0.53));
+    double beat = 0.5 + 0.5 * Math.abs(Math.sin(mTimeSeconds * Math.PI * 2));
+
+    for (int n = 0; n < mSampleCount; n++) {
+      double t = mTimeSeconds + (double) n / SAMPLE_RATE;
+      double sample = beat * Math.sin(2 * Math.PI * bass * t)
+          + 0.5 * Math.sin(2 * Math.PI * mid * t)
+          + 0.25 * Math.sin(2 * Math.PI * high * t)
+          + 0.05 * (Math.random() * 2 - 1);
+      mSamples[n] = (float) (sample / 1.8);
+    }
+    mTimeSeconds += FRAME_INTERVAL_MS / 1000.0;
+  }
+
+  private void calculateMagnitudes() {
+    float scale = 2f / mSampleCount;
+    for (int k = 0; k < mBinCount; k++) {
+      float re = 0;
+      float im = 0;
+      int table = k * mSampleCount;
+      for (int n = 0; n < mSampleCount; n++) {
+        re += mSamples[n] * mCos[table + n];
+        im -= mSamples[n] * mSin[table + n];
+      }
+      mMagnitudes[k] = Math.min(1f, (float) Math.sqrt(re * re + im * im) * scale);
+    }
+  }
+}
@@ -0,0 +1,114 @@
+/*
+* Copyright (C) 2015 Mert Şimşek
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package co.mobiwise.playerview;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Shares one load of delegate between callers of same url and width. Used on main
+ * thread.
+ */
+public class CoalescingCoverLoader implements CoverLoader {
+
+  private final CoverLoader delegate;
+
+  private final Map<String, InFlight> inFlight = new HashMap<String, InFlight>();
+
+  public CoalescingCoverLoader(CoverLoader delegate) {
+    this.delegate = delegate;
+  }
+
+  /**
+   * Count of loads which delegate is running now.
+   */
+  public int getInFlightCount() {
+    return inFlight.size();
+  }
+
+  @Override public Request load(Context context, String url, int targetWidth,
+      Callback callback) {
+    final String key = url + '@' + targetWidth;
+
+    InFlight load = inFlight.get(key);
+    if (load == null) {
+      load = new InFlight(key);
+      load.callbacks.add(callback);
+      inFlight.put(key, load);
+      Request request = delegate.load(context, url, targetWidth, load);
+      //Delegate can finish before returning
+      if (!load.finished) load.request = request;
+    } else {
+      load.callbacks.add(callback);
+    }
+
+    final InFlight joined = load;
+    final Callback caller = callback;
+    return new Request() {
+      @Override public void cancel() {
+        joined.remove(caller);
+      }
+    };
+  }
+
+  /**
+   * One load of delegate and callers waiting for it.
+   */
+  private final class InFlight implements Callback {
+    final String key;
+    final List<Callback> callbacks = new ArrayList<Callback>(2);
+    Request request;
+    boolean finished;
+
+    InFlight(String key) {
+      this.key = key;
+    }
+
+    void remove(Callback callback) {
+      if (finished || !callbacks.remove(callback) || !callbacks.isEmpty()) return;
+
+      finished = true;
+      inFlight.remove(key);
+      if (request != null) request.cancel();
+    }
+
+    @Override public void onCoverLoaded(String url, Bitmap bitmap) {
+      if (finished) return;
+      finish();
+      for (int i = 0; i < callbacks.size(); i++) {
+        callbacks.get(i).onCoverLoaded(url, bitmap);
+      }
+    }
+
+    @Override public void onCoverFailed(String url, Exception e) {
+      if (finished) return;
+      finish();
+      for (int i = 0; i < callbacks.size(); i++) {
+        callbacks.get(i).onCoverFailed(url, e);
+      }
+    }
+
+    private void finish() {
+      finished = true;
+      inFlight.remove(key);
+    }
+  }
+}
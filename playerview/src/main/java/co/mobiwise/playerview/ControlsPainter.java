@@ -0,0 +1,170 @@
+/*
+* Copyright (C) 2015 Mert Şimşek
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package co.mobiwise.playerview;
+
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.graphics.RectF;
+
+/**
+ * Draws button, progress arc and time texts. MusicPlayerView and its render thread
+ * draw with their own painter, it keeps measured time texts of one drawer.
+ */
+final class ControlsPainter {
+
+  /**
+   * Max char count of time text. Enough for "h:mm:ss" of any int seconds.
+   */
+  static final int TIME_CHARS_LENGTH = 12;
+
+  /**
+   * Left and passed time texts are formatted into these buffers. They are
+   * formatted and measured only when displayed second, paint or position changes.
+   */
+  private final char[] mLeftTimeChars = new char[TIME_CHARS_LENGTH];
+  private final char[] mPassedTimeChars = new char[TIME_CHARS_LENGTH];
+  private int mLeftTimeLength;
+  private int mPassedTimeLength;
+
+  /**
+   * Seconds currently formatted in time buffers. -1 means buffer must be updated.
+   */
+  private int mLeftTimeSeconds = -1;
+  private int mPassedTimeSeconds = -1;
+
+  /**
+   * Paint and positions which time texts are measured with.
+   */
+  private Paint mTimePaint;
+  private float mLeftTimeX;
+  private float mPassedTimeX;
+  private float mTimeY;
+
+  private final Rect mRectLeftText = new Rect();
+  private final Rect mRectPassedText = new Rect();
+
+  /**
+   * Bounds of left and passed time texts on view.
+   */
+  private final RectF mRectLeftTime = new RectF();
+  private final RectF mRectPassedTime = new RectF();
+
+  /**
+   * Draws parts which do not change with progress: button and empty progress.
+   */
+  static void drawStaticParts(Canvas canvas, PlayerStyle style, float centerX, float centerY,
+      float buttonRadius, RectF arcRect, boolean progressVisible) {
+    canvas.drawCircle(centerX, centerY, buttonRadius, style.buttonPaint);
+    if (progressVisible) canvas.drawArc(arcRect, 145, 250, false, style.progressEmptyPaint);
+  }
+
+  /**
+   * Draws loaded progress, and time texts if withTimeTexts is true. Returns degree of
+   * loaded progress.
+   */
+  float drawProgress(Canvas canvas, PlayerStyle style, RectF arcRect, long positionMs,
+      long durationMs, boolean withTimeTexts, float leftTimeX, float passedTimeX,
+      float timeY) {
+    float degree = MusicPlayerView.calculatePastProgressDegree(positionMs, durationMs);
+    canvas.drawArc(arcRect, 145, degree, false, style.progressLoadedPaint);
+    if (withTimeTexts) {
+      drawTimeTexts(canvas, style.timePaint, positionMs, durationMs, leftTimeX, passedTimeX,
+          timeY);
+    }
+    return degree;
+  }
+
+  private void drawTimeTexts(Canvas canvas, Paint paint, long positionMs, long durationMs,
+      float leftTimeX, float passedTimeX, float timeY) {
+    if (paint != mTimePaint || leftTimeX != mLeftTimeX || passedTimeX != mPassedTimeX
+        || timeY != mTimeY) {
+      mTimePaint = paint;
+      mLeftTimeX = leftTimeX;
+      mPassedTimeX = passedTimeX;
+      mTimeY = timeY;
+      resetTimeTexts();
+    }
+
+    int leftSeconds = calculateLeftSeconds(positionMs, durationMs);
+    if (leftSeconds != mLeftTimeSeconds) {
+      mLeftTimeSeconds = leftSeconds;
+      mLeftTimeLength = MusicPlayerView.secondsToTime(leftSeconds, mLeftTimeChars);
+      placeTimeText(paint, mLeftTimeChars, mLeftTimeLength, leftTimeX, timeY, true,
+          mRectLeftText, mRectLeftTime);
+    }
+    canvas.drawText(mLeftTimeChars, 0, mLeftTimeLength, mRectLeftTime.left - mRectLeftText.left,
+        mRectLeftTime.bottom - mRectLeftText.bottom, paint);
+
+    int passedSeconds = calculatePassedSeconds(positionMs);
+    if (passedSeconds != mPassedTimeSeconds) {
+      mPassedTimeSeconds = passedSeconds;
+      mPassedTimeLength = MusicPlayerView.secondsToTime(passedSeconds, mPassedTimeChars);
+      placeTimeText(paint, mPassedTimeChars, mPassedTimeLength, passedTimeX, timeY, false,
+          mRectPassedText, mRectPassedTime);
+    }
+    canvas.drawText(mPassedTimeChars, 0, mPassedTimeLength,
+        mRectPassedTime.left - mRectPassedText.left,
+        mRectPassedTime.bottom - mRectPassedText.bottom, paint);
+  }
+
+  /**
+   * Time texts are measured again on next draw.
+   */
+  void resetTimeTexts() {
+    mLeftTimeSeconds = -1;
+    mPassedTimeSeconds = -1;
+  }
+
+  /**
+   * True if time texts of these seconds are drawn now.
+   */
+  boolean hasTimeTexts(int leftSeconds, int passedSeconds) {
+    return leftSeconds == mLeftTimeSeconds && passedSeconds == mPassedTimeSeconds;
+  }
+
+  RectF getLeftTimeBounds() {
+    return mRectLeftTime;
+  }
+
+  RectF getPassedTimeBounds() {
+    return mRectPassedTime;
+  }
+
+  static int calculateLeftSeconds(long positionMs, long durationMs) {
+    return (int) ((durationMs - positionMs + 999) / 1000);
+  }
+
+  static int calculatePassedSeconds(long positionMs) {
+    return (int) (positionMs / 1000);
+  }
+
+  /**
+   * Measures time text placed at timeX and timeY, and writes its bounds on view to
+   * outBounds. Text must be drawn at (outBounds.left - textBounds.left,
+   * outBounds.bottom - textBounds.bottom).
+   */
+  static void placeTimeText(Paint paint, char[] time, int length, float timeX, float timeY,
+      boolean isLeftTime, Rect textBounds, RectF outBounds) {
+    paint.getTextBounds(time, 0, length, textBounds);
+
+    float x = isLeftTime ? timeX - textBounds.width() / 1.5f : timeX - textBounds.width() / 3.0f;
+    float y = timeY + textBounds.height();
+
+    outBounds.set(x + textBounds.left, y + textBounds.top, x + textBounds.right,
+        y + textBounds.bottom);
+  }
+}
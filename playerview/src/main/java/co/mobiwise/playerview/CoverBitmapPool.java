@@ -0,0 +1,287 @@
+/*
+* Copyright (C) 2015 Mert Şimşek
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package co.mobiwise.playerview;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.os.Build;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.WeakHashMap;
+
+/**
+ * Process wide pool of unused cover bitmaps, bucketed by allocation size. Only bitmaps
+ * created by this library are pooled.
+ */
+public final class CoverBitmapPool {
+
+  /**
+   * Default budget is 1/32 of app heap.
+   */
+  private static final int DEFAULT_MAX_BYTES = (int) Math.min(Integer.MAX_VALUE,
+      Runtime.getRuntime().maxMemory() / 32);
+
+  /**
+   * Pooled bitmap may be this many times bigger than needed, bigger ones waste memory.
+   */
+  private static final int MAX_SIZE_MULTIPLE = 4;
+
+  private static final Paint SCALE_PAINT = new Paint(Paint.FILTER_BITMAP_FLAG);
+
+  private static final Object sLock = new Object();
+
+  /**
+   * Pooled bitmaps by allocation bytes.
+   */
+  private static final TreeMap<Integer, ArrayDeque<Bitmap>> sBuckets =
+      new TreeMap<Integer, ArrayDeque<Bitmap>>();
+
+  /**
+   * Pooled bitmaps from least to most recently pooled, trimmed from the start.
+   */
+  private static final List<Bitmap> sOrder = new ArrayList<Bitmap>();
+
+  /**
+   * Bitmaps created by this library. Others are not pooled.
+   */
+  private static final Map<Bitmap, Boolean> sOwned = new WeakHashMap<Bitmap, Boolean>();
+
+  /**
+   * Bitmaps which cover thread still reads, by pin count. Pinned bitmaps which are
+   * put are pooled when they are unpinned.
+   */
+  private static final Map<Bitmap, Integer> sPins = new HashMap<Bitmap, Integer>();
+  private static final Set<Bitmap> sUnpinPuts = new HashSet<Bitmap>();
+
+  private static int sMaxBytes = DEFAULT_MAX_BYTES;
+  private static int sSizeBytes;
+  private static int sHitCount;
+  private static int sMissCount;
+
+  private CoverBitmapPool() {
+  }
+
+  /**
+   * Marks bitmap as created by this library, so it can be pooled when it is released.
+   */
+  static Bitmap own(Bitmap bitmap) {
+    if (bitmap != null) {
+      synchronized (sLock) {
+        sOwned.put(bitmap, Boolean.TRUE);
+      }
+    }
+    return bitmap;
+  }
+
+  /**
+   * Takes a bitmap which can hold width x height pixels of config, or returns null.
+   * Before KitKat only bitmaps of exactly same size and config can be reused.
+   * Returned bitmap has undefined pixels.
+   */
+  static Bitmap get(int width, int height, Bitmap.Config config) {
+    if (width <= 0 || height <= 0) return null;
+    int bytes = width * height * bytesPerPixel(config);
+    int maxBytes = (int) Math.min(Integer.MAX_VALUE, (long) bytes * MAX_SIZE_MULTIPLE);
+
+    synchronized (sLock) {
+      for (Map.Entry<Integer, ArrayDeque<Bitmap>> bucket
+          : sBuckets.subMap(bytes, true, maxBytes, true).entrySet()) {
+        Iterator<Bitmap> iterator = bucket.getValue().iterator();
+        while (iterator.hasNext()) {
+          Bitmap bitmap = iterator.next();
+          if (!canReuse(bitmap, width, height, config)) continue;
+
+          iterator.remove();
+          if (bucket.getValue().isEmpty()) sBuckets.remove(bucket.getKey());
+          sOrder.remove(bitmap);
+          sSizeBytes -= bucket.getKey();
+          sHitCount++;
+          if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
+            bitmap.reconfigure(width, height, config);
+          }
+          return bitmap;
+        }
+      }
+      sMissCount++;
+      return null;
+    }
+  }
+
+  /**
+   * Gives bitmap back to pool. Caller must not use it anymore. Bitmaps not created
+   * by this library, or which do not fit budget, are left to garbage collector.
+   */
+  static void put(Bitmap bitmap) {
+    if (bitmap == null || bitmap.isRecycled() || !bitmap.isMutable()) return;
+    int bytes = allocationBytes(bitmap);
+
+    synchronized (sLock) {
+      if (sPins.containsKey(bitmap)) {
+        sUnpinPuts.add(bitmap);
+        return;
+      }
+      if (!sOwned.containsKey(bitmap) || sOrder.contains(bitmap) || bytes > sMaxBytes) return;
+
+      ArrayDeque<Bitmap> bucket = sBuckets.get(bytes);
+      if (bucket == null) {
+        bucket = new ArrayDeque<Bitmap>();
+        sBuckets.put(bytes, bucket);
+      }
+      bucket.add(bitmap);
+      sOrder.add(bitmap);
+      sSizeBytes += bytes;
+      trimToSize(sMaxBytes);
+    }
+  }
+
+  /**
+   * Keeps bitmap out of pool until it is unpinned, so a bitmap which is read on cover
+   * thread can be released meanwhile. Every pin must be followed by unpin.
+   */
+  static void pin(Bitmap bitmap) {
+    synchronized (sLock) {
+      Integer pins = sPins.get(bitmap);
+      sPins.put(bitmap, pins != null ? pins + 1 : 1);
+    }
+  }
+
+  /**
+   * Releases a pin. Bitmap which was put while pinned is pooled now.
+   */
+  static void unpin(Bitmap bitmap) {
+    synchronized (sLock) {
+      int pins = sPins.get(bitmap) - 1;
+      if (pins > 0) {
+        sPins.put(bitmap, pins);
+        return;
+      }
+      sPins.remove(bitmap);
+      if (!sUnpinPuts.remove(bitmap)) return;
+    }
+    put(bitmap);
+  }
+
+  /**
+   * Scales bitmap into a pooled or new bitmap of given size.
+   */
+  static Bitmap scale(Bitmap bitmap, int width, int height) {
+    Bitmap.Config config = bitmap.getConfig() != null ? bitmap.getConfig()
+        : Bitmap.Config.ARGB_8888;
+    Bitmap scaled = get(width, height, config);
+    if (scaled != null) {
+      scaled.eraseColor(Color.TRANSPARENT);
+    } else {
+      scaled = own(Bitmap.createBitmap(width, height, config));
+    }
+
+    Canvas canvas = new Canvas(scaled);
+    canvas.drawBitmap(bitmap, null, new Rect(0, 0, width, height), SCALE_PAINT);
+    return scaled;
+  }
+
+  private static boolean canReuse(Bitmap bitmap, int width, int height, Bitmap.Config config) {
+    if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) return true;
+    return bitmap.getWidth() == width && bitmap.getHeight() == height
+        && bitmap.getConfig() == config;
+  }
+
+  private static int allocationBytes(Bitmap bitmap) {
+    if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
+      return bitmap.getAllocationByteCount();
+    }
+    return bitmap.getRowBytes() * bitmap.getHeight();
+  }
+
+  private static int bytesPerPixel(Bitmap.Config config) {
+    if (config == Bitmap.Config.ALPHA_8) return 1;
+    if (config == Bitmap.Config.RGB_565 || config == Bitmap.Config.ARGB_4444) return 2;
+    return 4;
+  }
+
+  private static void trimToSize(int maxBytes) {
+    while (sSizeBytes > maxBytes && !sOrder.isEmpty()) {
+      Bitmap bitmap = sOrder.remove(0);
+      int bytes = allocationBytes(bitmap);
+      ArrayDeque<Bitmap> bucket = sBuckets.get(bytes);
+      bucket.remove(bitmap);
+      if (bucket.isEmpty()) sBuckets.remove(bytes);
+      sSizeBytes -= bytes;
+    }
+  }
+
+  /**
+   * Sets byte budget of pool. Least recently pooled bitmaps are dropped to fit.
+   */
+  public static void setMaxBytes(int maxBytes) {
+    synchronized (sLock) {
+      sMaxBytes = Math.max(0, maxBytes);
+      trimToSize(sMaxBytes);
+    }
+  }
+
+  public static int getMaxBytes() {
+    synchronized (sLock) {
+      return sMaxBytes;
+    }
+  }
+
+  /**
+   * Bytes of pooled bitmaps.
+   */
+  public static int getSizeBytes() {
+    synchronized (sLock) {
+      return sSizeBytes;
+    }
+  }
+
+  /**
+   * Times a decode or scale reused a pooled bitmap.
+   */
+  public static int getHitCount() {
+    synchronized (sLock) {
+      return sHitCount;
+    }
+  }
+
+  /**
+   * Times a decode or scale had to allocate a new bitmap.
+   */
+  public static int getMissCount() {
+    synchronized (sLock) {
+      return sMissCount;
+    }
+  }
+
+  /**
+   * Drops all pooled bitmaps.
+   */
+  public static void clear() {
+    synchronized (sLock) {
+      trimToSize(0);
+    }
+  }
+}
@@ -0,0 +1,244 @@
+/*
+* Copyright (C) 2015 Mert Şimşek
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package co.mobiwise.playerview;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapShader;
+import android.graphics.Shader;
+import android.util.LruCache;
+
+import java.util.Map;
+
+/**
+ * Process wide cache of covers scaled to a view width, with their shaders. Cached
+ * bitmaps are shared, they must never be changed or recycled.
+ */
+public final class CoverCache {
+
+  /**
+   * Default budget is 1/16 of app heap.
+   */
+  private static final int DEFAULT_MAX_BYTES = (int) Math.min(Integer.MAX_VALUE,
+      Runtime.getRuntime().maxMemory() / 16);
+
+  private static final Object sLock = new Object();
+
+  private static LruCache<String, Entry> sCache = createCache(DEFAULT_MAX_BYTES);
+
+  /**
+   * Cover requests of views, counted once per request. LruCache counts every get(),
+   * also lookups of prefetcher and shader creation. Guarded by sLock.
+   */
+  private static int sHitCount;
+  private static int sMissCount;
+
+  /**
+   * Scaled cover bitmap and shader created for it.
+   */
+  static final class Entry {
+    final Bitmap bitmap;
+    final BitmapShader shader;
+
+    /**
+     * Views which hold this entry. Guarded by sLock.
+     */
+    private int mRefs;
+    private boolean mEvicted;
+
+    Entry(Bitmap bitmap) {
+      this.bitmap = bitmap;
+      this.shader = new BitmapShader(bitmap, Shader.TileMode.CLAMP, Shader.TileMode.CLAMP);
+    }
+  }
+
+  private CoverCache() {
+  }
+
+  private static LruCache<String, Entry> createCache(int maxBytes) {
+    return new LruCache<String, Entry>(Math.max(1, maxBytes)) {
+      @Override protected int sizeOf(String key, Entry entry) {
+        return entry.bitmap.getRowBytes() * entry.bitmap.getHeight();
+      }
+
+      @Override protected void entryRemoved(boolean evicted, String key, Entry oldValue,
+          Entry newValue) {
+        //Cache is only changed while holding sLock
+        if (oldValue == newValue) return;
+        oldValue.mEvicted = true;
+        if (oldValue.mRefs == 0) CoverBitmapPool.put(oldValue.bitmap);
+      }
+    };
+  }
+
+  /**
+   * Cache key of a cover for a view width and bitmap config.
+   */
+  static String key(String coverKey, int width, Bitmap.Config config) {
+    return coverKey + '@' + width + ':' + config;
+  }
+
+  /**
+   * Returns cached entry for key and holds it until it is released, or null.
+   */
+  static Entry acquire(String key) {
+    synchronized (sLock) {
+      Entry entry = sCache.get(key);
+      if (entry != null) entry.mRefs++;
+      return entry;
+    }
+  }
+
+  /**
+   * Same as acquire(key), for a view which requests its cover. It is counted in hit
+   * and miss counts, other lookups are not.
+   */
+  static Entry request(String key) {
+    synchronized (sLock) {
+      Entry entry = acquire(key);
+      if (entry != null) {
+        sHitCount++;
+      } else {
+        sMissCount++;
+      }
+      return entry;
+    }
+  }
+
+  /**
+   * Caches bitmap and holds its entry until it is released. If key is cached already,
+   * that entry is returned instead.
+   */
+  static Entry acquire(String key, Bitmap bitmap, Entry heldEntry) {
+    synchronized (sLock) {
+      Entry entry = sCache.get(key);
+      if (entry == null) {
+        entry = heldEntry != null && heldEntry.bitmap == bitmap ? heldEntry : new Entry(bitmap);
+        entry.mEvicted = false;
+        sCache.put(key, entry);
+      }
+      entry.mRefs++;
+      return entry;
+    }
+  }
+
+  /**
+   * Returns true if a cover is cached for key. Hit and miss counts do not change, but
+   * cover becomes most recently used, as prefetcher asks about covers played next.
+   */
+  static boolean contains(String key) {
+    synchronized (sLock) {
+      //A snapshot would copy whole cache for each lookup
+      return sCache.get(key) != null;
+    }
+  }
+
+  /**
+   * Caches bitmap with its shader, nobody holds it yet. Returns false and caches nothing
+   * if a cover is already cached for key.
+   */
+  static boolean putIfAbsent(String key, Bitmap bitmap) {
+    synchronized (sLock) {
+      if (sCache.get(key) != null) return false;
+      sCache.put(key, new Entry(bitmap));
+      return true;
+    }
+  }
+
+  /**
+   * Holds an entry which caller has already acquired once more.
+   */
+  static void acquire(Entry entry) {
+    synchronized (sLock) {
+      entry.mRefs++;
+    }
+  }
+
+  /**
+   * Caller does not draw entry anymore. Evicted entry with no holders is pooled.
+   */
+  static void release(Entry entry) {
+    if (entry == null) return;
+    synchronized (sLock) {
+      entry.mRefs--;
+      if (entry.mRefs == 0 && entry.mEvicted) CoverBitmapPool.put(entry.bitmap);
+    }
+  }
+
+  /**
+   * Sets byte budget of cache. Least recently used covers are evicted to fit.
+   * Hit and miss counts start from zero again.
+   */
+  public static void setMaxBytes(int maxBytes) {
+    synchronized (sLock) {
+      Map<String, Entry> entries = sCache.snapshot();
+      sCache = createCache(maxBytes);
+      sHitCount = 0;
+      sMissCount = 0;
+      //Snapshot is ordered from least to most recently used
+      for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+        sCache.put(entry.getKey(), entry.getValue());
+      }
+    }
+  }
+
+  public static int getMaxBytes() {
+    synchronized (sLock) {
+      return sCache.maxSize();
+    }
+  }
+
+  /**
+   * Bytes of cached cover bitmaps.
+   */
+  public static int getSizeBytes() {
+    synchronized (sLock) {
+      return sCache.size();
+    }
+  }
+
+  /**
+   * Cover requests of views which found their cover scaled for their width.
+   */
+  public static int getHitCount() {
+    synchronized (sLock) {
+      return sHitCount;
+    }
+  }
+
+  /**
+   * Cover requests of views which had to decode or load their cover.
+   */
+  public static int getMissCount() {
+    synchronized (sLock) {
+      return sMissCount;
+    }
+  }
+
+  public static int getEvictionCount() {
+    synchronized (sLock) {
+      return sCache.evictionCount();
+    }
+  }
+
+  /**
+   * Removes all covers from cache. Views keep their current covers.
+   */
+  public static void clear() {
+    synchronized (sLock) {
+      sCache.evictAll();
+    }
+  }
+}
@@ -0,0 +1,242 @@
+/*
+* Copyright (C) 2015 Mert Şimşek
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package co.mobiwise.playerview;
+
+import android.content.Context;
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.drawable.Drawable;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Decodes cover images at view size on a background thread. Bounds are read
+ * first, then image is decoded with inSampleSize, so full size image never
+ * comes to memory. Result is scaled to exact target width.
+ */
+final class CoverDecoder {
+
+  /**
+   * Notified on main thread when decode is finished.
+   */
+  interface Callback {
+    void onCoverDecoded(CoverSource source, Bitmap bitmap);
+
+    void onCoverFailed(CoverSource source, Exception e);
+  }
+
+  private static final ExecutorService sExecutor =
+      Executors.newSingleThreadExecutor(new ThreadFactory() {
+        @Override public Thread newThread(final Runnable r) {
+          Thread thread = new Thread(new Runnable() {
+            @Override public void run() {
+              Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+              r.run();
+            }
+          }, "MusicPlayerView-cover");
+          thread.setDaemon(true);
+          return thread;
+        }
+      });
+
+  private static final Handler sMainHandler = new Handler(Looper.getMainLooper());
+
+  private CoverDecoder() {
+  }
+
+  /**
+   * Decodes source on background thread and notifies callback on main thread.
+   * Drawable resources are drawn with theme of context, only the theme is kept.
+   * Returned future can be cancelled when cover is not needed anymore.
+   */
+  static Future<?> decodeAsync(Context context, final CoverSource source, final int targetWidth,
+      final Bitmap.Config config, final Callback callback) {
+    final Context appContext = context.getApplicationContext();
+    final Resources.Theme theme = context.getTheme();
+    return sExecutor.submit(new Runnable() {
+      @Override public void run() {
+        try {
+          final Bitmap bitmap = decode(appContext, theme, source, targetWidth, config);
+          sMainHandler.post(new Runnable() {
+            @Override public void run() {
+              callback.onCoverDecoded(source, bitmap);
+            }
+          });
+        } catch (final Exception e) {
+          sMainHandler.post(new Runnable() {
+            @Override public void run() {
+              callback.onCoverFailed(source, e);
+            }
+          });
+        }
+      }
+    });
+  }
+
+  /**
+   * Runs work on cover thread. Covers and their palettes are processed one by one.
+   */
+  static Future<?> submit(Runnable work) {
+    return sExecutor.submit(work);
+  }
+
+  static void postToMain(Runnable runnable) {
+    sMainHandler.post(runnable);
+  }
+
+  /**
+   * Decodes source to a bitmap which is targetWidth wide. Must not be called on main thread.
+   */
+  static Bitmap decode(Context context, Resources.Theme theme, CoverSource source,
+      int targetWidth, Bitmap.Config config) throws IOException {
+    int resId = source.getResourceId();
+    //Only drawable, mipmap and raw resources can be opened as a stream, colors are drawn
+    if (resId != 0 && !isStreamResource(context.getResources().getResourceTypeName(resId))) {
+      return drawResource(context, theme, resId, targetWidth, config);
+    }
+
+    BitmapFactory.Options options = new BitmapFactory.Options();
+    options.inJustDecodeBounds = true;
+    decodeStream(context, source, options);
+
+    if (options.outWidth <= 0 || options.outHeight <= 0) {
+      //Not a bitmap. Resource can still be a drawable like shape or layer list.
+      if (resId != 0) return drawResource(context, theme, resId, targetWidth, config);
+      throw new IOException("Cannot decode cover " + source);
+    }
+
+    options.inJustDecodeBounds = false;
+    options.inSampleSize = calculateInSampleSize(options.outWidth, options.outHeight, targetWidth);
+    options.inPreferredConfig = config;
+    options.inMutable = true;
+    options.inBitmap = obtainInBitmap(options, config);
+
+    Bitmap bitmap;
+    try {
+      bitmap = decodeStream(context, source, options);
+    } catch (IllegalArgumentException e) {
+      //Pooled bitmap does not fit this image. Decode into a new one.
+      CoverBitmapPool.put(options.inBitmap);
+      options.inBitmap = null;
+      bitmap = decodeStream(context, source, options);
+    }
+    if (bitmap == null) {
+      CoverBitmapPool.put(options.inBitmap);
+      throw new IOException("Cannot decode cover " + source);
+    }
+
+    return scaleToWidth(CoverBitmapPool.own(bitmap), targetWidth);
+  }
+
+  /**
+   * Pooled bitmap which sampled image can be decoded into, or null. Before KitKat
+   * decoder reuses bitmaps only when image is not sampled.
+   */
+  private static Bitmap obtainInBitmap(BitmapFactory.Options options, Bitmap.Config config) {
+    int sampleSize = options.inSampleSize;
+    if (sampleSize > 1 && Build.VERSION.SDK_INT < Build.VERSION_CODES.KITKAT) return null;
+
+    int width = (options.outWidth + sampleSize - 1) / sampleSize;
+    int height = (options.outHeight + sampleSize - 1) / sampleSize;
+    return CoverBitmapPool.get(width, height, config);
+  }
+
+  /**
+   * Largest power of 2 sample size which keeps decoded width and height
+   * at least as big as target width.
+   */
+  static int calculateInSampleSize(int width, int height, int targetWidth) {
+    int inSampleSize = 1;
+    if (targetWidth <= 0) return inSampleSize;
+
+    int minSide = Math.min(width, height);
+    while (minSide / (inSampleSize * 2) >= targetWidth) {
+      inSampleSize *= 2;
+    }
+    return inSampleSize;
+  }
+
+  /**
+   * Scales bitmap to target width, keeps aspect ratio. Sampled bitmap goes back to pool.
+   */
+  private static Bitmap scaleToWidth(Bitmap bitmap, int targetWidth) {
+    if (targetWidth <= 0 || bitmap.getWidth() == targetWidth) return bitmap;
+
+    float scale = (float) targetWidth / bitmap.getWidth();
+    int targetHeight = Math.max(1, Math.round(bitmap.getHeight() * scale));
+    Bitmap scaled = CoverBitmapPool.scale(bitmap, targetWidth, targetHeight);
+    CoverBitmapPool.put(bitmap);
+    return scaled;
+  }
+
+  private static Bitmap decodeStream(Context context, CoverSource source,
+      BitmapFactory.Options options) throws IOException {
+    InputStream stream = source.open(context);
+    try {
+      return BitmapFactory.decodeStream(stream, null, options);
+    } finally {
+      stream.close();
+    }
+  }
+
+  private static boolean isStreamResource(String type) {
+    return "drawable".equals(type) || "mipmap".equals(type) || "raw".equals(type);
+  }
+
+  /**
+   * Draws a non bitmap drawable or color resource at target size.
+   */
+  @SuppressWarnings("deprecation")
+  private static Bitmap drawResource(Context context, Resources.Theme theme, int resId,
+      int targetWidth, Bitmap.Config config) throws IOException {
+    Drawable drawable;
+    if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
+      drawable = context.getResources().getDrawable(resId, theme);
+    } else {
+      drawable = context.getResources().getDrawable(resId);
+    }
+    if (drawable == null) throw new IOException("Cannot load cover resource " + resId);
+
+    int width = targetWidth > 0 ? targetWidth : Math.max(1, drawable.getIntrinsicWidth());
+    int height = width;
+    if (drawable.getIntrinsicWidth() > 0 && drawable.getIntrinsicHeight() > 0) {
+      height = Math.max(1, width * drawable.getIntrinsicHeight() / drawable.getIntrinsicWidth());
+    }
+
+    Bitmap bitmap = CoverBitmapPool.get(width, height, config);
+    if (bitmap != null) {
+      bitmap.eraseColor(Color.TRANSPARENT);
+    } else {
+      bitmap = CoverBitmapPool.own(Bitmap.createBitmap(width, height, config));
+    }
+    Canvas canvas = new Canvas(bitmap);
+    drawable.setBounds(0, 0, width, height);
+    drawable.draw(canvas);
+    return bitmap;
+  }
+}
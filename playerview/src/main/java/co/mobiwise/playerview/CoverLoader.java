@@ -0,0 +1,51 @@
+/*
+* Copyright (C) 2015 Mert Şimşek
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package co.mobiwise.playerview;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+
+/**
+ * Loads cover images from urls. Default is PicassoCoverLoader. Loaders are called and
+ * notify callbacks on main thread.
+ */
+public interface CoverLoader {
+
+  /**
+   * Notified when a cover is loaded or failed.
+   */
+  interface Callback {
+    void onCoverLoaded(String url, Bitmap bitmap);
+
+    /**
+     * @param e reason of failure, can be null.
+     */
+    void onCoverFailed(String url, Exception e);
+  }
+
+  /**
+   * A pending load. Callback is not notified after it is cancelled.
+   */
+  interface Request {
+    void cancel();
+  }
+
+  /**
+   * Starts loading url. Bitmap should be about targetWidth wide, 0 means size is not known.
+   * Callback can be notified before this method returns.
+   */
+  Request load(Context context, String url, int targetWidth, Callback callback);
+}
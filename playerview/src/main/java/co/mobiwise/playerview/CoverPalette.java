@@ -0,0 +1,180 @@
+/*
+* Copyright (C) 2015 Mert Şimşek
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package co.mobiwise.playerview;
+
+import android.graphics.Bitmap;
+import android.graphics.Color;
+import android.util.LruCache;
+
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Dominant and vibrant colors of a cover. They are extracted from a tiny scaled copy
+ * of cover on cover thread and cached by cover key, so same album is extracted once.
+ */
+public final class CoverPalette {
+
+  /**
+   * Notified on main thread with palette of bitmap.
+   */
+  interface Callback {
+    void onPaletteExtracted(Bitmap bitmap, CoverPalette palette);
+  }
+
+  /**
+   * Cover is scaled to this size before its colors are counted.
+   */
+  private static final int SAMPLE_SIZE = 24;
+
+  private static final int MAX_CACHED_PALETTES = 64;
+
+  private static final LruCache<String, CoverPalette> sCache =
+      new LruCache<String, CoverPalette>(MAX_CACHED_PALETTES);
+
+  private final int mDominantColor;
+  private final int mVibrantColor;
+
+  CoverPalette(int dominantColor, int vibrantColor) {
+    mDominantColor = dominantColor;
+    mVibrantColor = vibrantColor;
+  }
+
+  /**
+   * Most common color of cover.
+   */
+  public int getDominantColor() {
+    return mDominantColor;
+  }
+
+  /**
+   * Most saturated and bright color of cover which is not rare. It is dominant
+   * color if cover has no vibrant color.
+   */
+  public int getVibrantColor() {
+    return mVibrantColor;
+  }
+
+  /**
+   * Returns cached palette of cover key, or null.
+   */
+  public static CoverPalette getCached(String key) {
+    synchronized (sCache) {
+      return sCache.get(key);
+    }
+  }
+
+  public static void clearCache() {
+    synchronized (sCache) {
+      sCache.evictAll();
+    }
+  }
+
+  /**
+   * Extracts palette of bitmap on cover thread and caches it with key, if key is not null.
+   * Bitmap must not be changed until callback is notified. It is pinned in
+   * CoverBitmapPool until it is read or request is cancelled, so it can be released.
+   */
+  static Future<?> extractAsync(final Bitmap bitmap, final String key, final Callback callback) {
+    CoverBitmapPool.pin(bitmap);
+    //Either extraction or cancel before it starts unpins bitmap, never both
+    final AtomicBoolean unpinClaimed = new AtomicBoolean();
+    FutureTask<Void> task = new FutureTask<Void>(new Runnable() {
+      @Override public void run() {
+        if (!unpinClaimed.compareAndSet(false, true)) return;
+        final CoverPalette palette;
+        try {
+          palette = extract(bitmap);
+        } finally {
+          CoverBitmapPool.unpin(bitmap);
+        }
+        if (key != null) {
+          synchronized (sCache) {
+            sCache.put(key, palette);
+          }
+        }
+        CoverDecoder.postToMain(new Runnable() {
+          @Override public void run() {
+            callback.onPaletteExtracted(bitmap, palette);
+          }
+        });
+      }
+    }, null) {
+      @Override protected void done() {
+        if (isCancelled() && unpinClaimed.compareAndSet(false, true)) {
+          CoverBitmapPool.unpin(bitmap);
+        }
+      }
+    };
+    CoverDecoder.submit(task);
+    return task;
+  }
+
+  /**
+   * Counts colors of a tiny copy of bitmap in 4096 buckets, 4 bits per channel.
+   * Must not be called on main thread.
+   */
+  static CoverPalette extract(Bitmap bitmap) {
+    Bitmap sample = Bitmap.createScaledBitmap(bitmap, SAMPLE_SIZE, SAMPLE_SIZE, true);
+    int[] pixels = new int[SAMPLE_SIZE * SAMPLE_SIZE];
+    sample.getPixels(pixels, 0, SAMPLE_SIZE, 0, 0, SAMPLE_SIZE, SAMPLE_SIZE);
+    if (sample != bitmap) sample.recycle();
+
+    int[] counts = new int[4096];
+    for (int pixel : pixels) {
+      if (Color.alpha(pixel) < 128) continue;
+      counts[bucketOf(pixel)]++;
+    }
+
+    int dominant = 0;
+    for (int bucket = 1; bucket < counts.length; bucket++) {
+      if (counts[bucket] > counts[dominant]) dominant = bucket;
+    }
+
+    //Vibrant color must cover at least 1 percent of cover
+    int minCount = Math.max(1, pixels.length / 100);
+    float[] hsv = new float[3];
+    int vibrant = -1;
+    float vibrantScore = 0;
+    for (int bucket = 0; bucket < counts.length; bucket++) {
+      if (counts[bucket] < minCount) continue;
+      Color.colorToHSV(colorOf(bucket), hsv);
+      if (hsv[1] < 0.35f || hsv[2] < 0.3f) continue;
+      float score = hsv[1] * hsv[2] * (float) Math.sqrt(counts[bucket]);
+      if (score > vibrantScore) {
+        vibrantScore = score;
+        vibrant = bucket;
+      }
+    }
+
+    int dominantColor = colorOf(dominant);
+    return new CoverPalette(dominantColor, vibrant >= 0 ? colorOf(vibrant) : dominantColor);
+  }
+
+  private static int bucketOf(int color) {
+    return ((Color.red(color) >> 4) << 8) | ((Color.green(color) >> 4) << 4)
+        | (Color.blue(color) >> 4);
+  }
+
+  /**
+   * Middle color of bucket.
+   */
+  private static int colorOf(int bucket) {
+    return Color.rgb((((bucket >> 8) & 0xF) << 4) | 8, (((bucket >> 4) & 0xF) << 4) | 8,
+        ((bucket & 0xF) << 4) | 8);
+  }
+}
@@ -0,0 +1,257 @@
+/*
+* Copyright (C) 2015 Mert Şimşek
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package co.mobiwise.playerview;
+
+import android.content.Context;
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.os.Looper;
+import android.os.MessageQueue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Future;
+
+/**
+ * Prepares upcoming covers of a player view while main thread is idle, and caches them
+ * in CoverCache. Only a few are prepared at a time. Used on main thread.
+ */
+final class CoverPrefetcher implements MessageQueue.IdleHandler {
+
+  static final int DEFAULT_MAX_IN_FLIGHT = 1;
+
+  private final Context mContext;
+  private final Resources.Theme mTheme;
+
+  /**
+   * Upcoming covers, CoverSource or url, in order they are prepared.
+   */
+  private final List<Object> mCovers = new ArrayList<Object>();
+  private int mNextCover;
+
+  private final List<Prefetch> mInFlight = new ArrayList<Prefetch>();
+  private int mMaxInFlight = DEFAULT_MAX_IN_FLIGHT;
+
+  private int mWidth;
+  private int mSmallWidth;
+  private Bitmap.Config mConfig = Bitmap.Config.ARGB_8888;
+  private CoverLoader mLoader;
+
+  private boolean mRunning;
+  private boolean mIdleHandlerAdded;
+
+  CoverPrefetcher(Context context) {
+    mContext = context.getApplicationContext();
+    mTheme = context.getTheme();
+  }
+
+  /**
+   * Sets upcoming covers. Covers which are being prepared for previous list are dropped.
+   */
+  void setCovers(List<?> covers) {
+    mCovers.clear();
+    if (covers != null) mCovers.addAll(covers);
+    restart();
+  }
+
+  /**
+   * Sets size and config which covers are prepared for. Small width is width of
+   * small cover quality, 0 if it is not used. Covers are prepared again if it changes.
+   */
+  void setTarget(int width, int smallWidth, Bitmap.Config config, CoverLoader loader) {
+    if (width == mWidth && smallWidth == mSmallWidth && config == mConfig && loader == mLoader) {
+      return;
+    }
+    mWidth = width;
+    mSmallWidth = smallWidth;
+    mConfig = config;
+    mLoader = loader;
+    restart();
+  }
+
+  void setMaxInFlight(int maxInFlight) {
+    mMaxInFlight = Math.max(1, maxInFlight);
+    schedule();
+  }
+
+  int getMaxInFlight() {
+    return mMaxInFlight;
+  }
+
+  /**
+   * Starts preparing covers. View calls this when it is attached.
+   */
+  void start() {
+    if (mRunning) return;
+    mRunning = true;
+    restart();
+  }
+
+  /**
+   * Cancels covers being prepared. View calls this when it is detached.
+   */
+  void stop() {
+    if (!mRunning) return;
+    mRunning = false;
+    cancelInFlight();
+    if (mIdleHandlerAdded) {
+      Looper.myQueue().removeIdleHandler(this);
+      mIdleHandlerAdded = false;
+    }
+  }
+
+  private void restart() {
+    cancelInFlight();
+    mNextCover = 0;
+    schedule();
+  }
+
+  private void cancelInFlight() {
+    for (int i = 0; i < mInFlight.size(); i++) {
+      mInFlight.get(i).cancel();
+    }
+    mInFlight.clear();
+  }
+
+  /**
+   * Waits for main thread to be idle if there is a cover to start.
+   */
+  private void schedule() {
+    if (!mRunning || mIdleHandlerAdded || mWidth == 0 || mNextCover >= mCovers.size()
+        || mInFlight.size() >= mMaxInFlight) {
+      return;
+    }
+    Looper.myQueue().addIdleHandler(this);
+    mIdleHandlerAdded = true;
+  }
+
+  @Override public boolean queueIdle() {
+    mIdleHandlerAdded = false;
+    while (mRunning && mInFlight.size() < mMaxInFlight && mNextCover < mCovers.size()) {
+      startPrefetch(mCovers.get(mNextCover++));
+    }
+    return false;
+  }
+
+  private void startPrefetch(Object cover) {
+    String key = cover instanceof CoverSource ? ((CoverSource) cover).getKey() : (String) cover;
+    if (key == null || isCached(key)) return;
+
+    Prefetch prefetch = new Prefetch(cover, key);
+    mInFlight.add(prefetch);
+    if (cover instanceof CoverSource) {
+      prefetch.mFuture = CoverDecoder.submit(prefetch);
+    } else if (mLoader != null) {
+      prefetch.mLoad = mLoader.load(mContext, key, mWidth, prefetch);
+    }
+  }
+
+  private boolean isCached(String key) {
+    return CoverCache.contains(CoverCache.key(key, mWidth, mConfig))
+        && (mSmallWidth == 0 || CoverCache.contains(CoverCache.key(key, mSmallWidth, mConfig)));
+  }
+
+  /**
+   * Scales cover to width on cover thread, keeps aspect ratio. If recycle is true,
+   * bitmap goes to pool when a scaled copy is returned.
+   */
+  private static Bitmap scaleToWidth(Bitmap bitmap, int width, boolean recycle) {
+    if (bitmap.getWidth() == width) return bitmap;
+    int height = Math.max(1, Math.round((float) bitmap.getHeight() * width / bitmap.getWidth()));
+    Bitmap scaled = CoverBitmapPool.scale(bitmap, width, height);
+    if (recycle) CoverBitmapPool.put(bitmap);
+    return scaled;
+  }
+
+  /**
+   * One cover being prepared. Bitmaps are created on cover thread and cached on main thread.
+   */
+  private final class Prefetch implements Runnable, CoverLoader.Callback {
+    final Object cover;
+    final String key;
+    final int width;
+    final int smallWidth;
+    final Bitmap.Config config;
+
+    Future<?> mFuture;
+    CoverLoader.Request mLoad;
+
+    /**
+     * Loaded bitmap, set when cover is from url.
+     */
+    private Bitmap mLoaded;
+
+    Prefetch(Object cover, String key) {
+      this.cover = cover;
+      this.key = key;
+      this.width = mWidth;
+      this.smallWidth = mSmallWidth;
+      this.config = mConfig;
+    }
+
+    @Override public void run() {
+      try {
+        Bitmap bitmap = mLoaded != null ? mLoaded
+            : CoverDecoder.decode(mContext, mTheme, (CoverSource) cover, width, config);
+        final Bitmap full = scaleToWidth(bitmap, width, true);
+        final Bitmap small = smallWidth > 0 ? scaleToWidth(full, smallWidth, false) : null;
+        CoverDecoder.postToMain(new Runnable() {
+          @Override public void run() {
+            finish(full, small);
+          }
+        });
+      } catch (final Exception e) {
+        CoverDecoder.postToMain(new Runnable() {
+          @Override public void run() {
+            finish(null, null);
+          }
+        });
+      }
+    }
+
+    @Override public void onCoverLoaded(String url, Bitmap bitmap) {
+      if (!mInFlight.contains(this)) return;
+      mLoaded = bitmap;
+      mFuture = CoverDecoder.submit(this);
+    }
+
+    @Override public void onCoverFailed(String url, Exception e) {
+      finish(null, null);
+    }
+
+    private void finish(Bitmap full, Bitmap small) {
+      if (!mInFlight.remove(this)) {
+        //Cancelled meanwhile, nobody has seen these bitmaps
+        CoverBitmapPool.put(full);
+        CoverBitmapPool.put(small);
+        return;
+      }
+      if (full != null && !CoverCache.putIfAbsent(CoverCache.key(key, width, config), full)) {
+        CoverBitmapPool.put(full);
+      }
+      if (small != null
+          && !CoverCache.putIfAbsent(CoverCache.key(key, smallWidth, config), small)) {
+        CoverBitmapPool.put(small);
+      }
+      schedule();
+    }
+
+    void cancel() {
+      if (mFuture != null) mFuture.cancel(false);
+      if (mLoad != null) mLoad.cancel();
+    }
+  }
+}
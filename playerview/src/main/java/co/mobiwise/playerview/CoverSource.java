@@ -0,0 +1,144 @@
+/*
+* Copyright (C) 2015 Mert Şimşek
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package co.mobiwise.playerview;
+
+import android.content.Context;
+import android.net.Uri;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Where a cover image comes from. Source can be opened more than once, so
+ * decoder can read image bounds first and decode at view size later.
+ * Two sources with same key are same cover.
+ */
+public abstract class CoverSource {
+
+  /**
+   * Opens a new stream of cover image every time it is called.
+   */
+  public interface StreamOpener {
+    InputStream open() throws IOException;
+  }
+
+  CoverSource() {
+  }
+
+  /**
+   * Unique key of cover image.
+   */
+  public abstract String getKey();
+
+  /**
+   * Opens a new stream of encoded cover image.
+   */
+  abstract InputStream open(Context context) throws IOException;
+
+  /**
+   * Resource id if source is a resource, otherwise 0.
+   */
+  int getResourceId() {
+    return 0;
+  }
+
+  /**
+   * Cover from drawable resource. Color and xml drawable resources are drawn at view size.
+   */
+  public static CoverSource fromResource(final int resId) {
+    return new CoverSource() {
+      @Override public String getKey() {
+        return "res:" + resId;
+      }
+
+      @Override InputStream open(Context context) throws IOException {
+        return context.getResources().openRawResource(resId);
+      }
+
+      @Override int getResourceId() {
+        return resId;
+      }
+    };
+  }
+
+  /**
+   * Cover from image file.
+   */
+  public static CoverSource fromFile(final File file) {
+    return new CoverSource() {
+      @Override public String getKey() {
+        return "file:" + file.getAbsolutePath();
+      }
+
+      @Override InputStream open(Context context) throws IOException {
+        return new FileInputStream(file);
+      }
+    };
+  }
+
+  /**
+   * Cover from image file path.
+   */
+  public static CoverSource fromFile(String path) {
+    return fromFile(new File(path));
+  }
+
+  /**
+   * Cover from content, file or android.resource uri.
+   */
+  public static CoverSource fromUri(final Uri uri) {
+    return new CoverSource() {
+      @Override public String getKey() {
+        return uri.toString();
+      }
+
+      @Override InputStream open(Context context) throws IOException {
+        InputStream stream = context.getContentResolver().openInputStream(uri);
+        if (stream == null) throw new IOException("Cannot open cover " + uri);
+        return stream;
+      }
+    };
+  }
+
+  /**
+   * Cover from any stream. Opener must return a new stream of same image on every call.
+   */
+  public static CoverSource fromStream(final String key, final StreamOpener opener) {
+    return new CoverSource() {
+      @Override public String getKey() {
+        return "stream:" + key;
+      }
+
+      @Override InputStream open(Context context) throws IOException {
+        return opener.open();
+      }
+    };
+  }
+
+  @Override public boolean equals(Object o) {
+    return o instanceof CoverSource && getKey().equals(((CoverSource) o).getKey());
+  }
+
+  @Override public int hashCode() {
+    return getKey().hashCode();
+  }
+
+  @Override public String toString() {
+    return getKey();
+  }
+}
@@ -0,0 +1,79 @@
+/*
+* Copyright (C) 2015 Mert Şimşek
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package co.mobiwise.playerview;
+
+import android.annotation.TargetApi;
+import android.media.MediaMetadata;
+import android.media.session.MediaController;
+import android.media.session.PlaybackState;
+import android.os.Build;
+
+/**
+ * Keeps a PlaybackClock in sync with a MediaSession. Clock is updated only when
+ * session publishes a new PlaybackState, position between states is calculated by clock.
+ */
+@TargetApi(Build.VERSION_CODES.LOLLIPOP)
+public class MediaSessionClockAdapter extends MediaController.Callback {
+
+  private final PlaybackClock mClock;
+
+  private MediaController mController;
+
+  public MediaSessionClockAdapter(PlaybackClock clock) {
+    mClock = clock;
+  }
+
+  /**
+   * Starts listening controller and updates clock with its current state.
+   */
+  public void attach(MediaController controller) {
+    detach();
+    mController = controller;
+    controller.registerCallback(this);
+    onMetadataChanged(controller.getMetadata());
+    onPlaybackStateChanged(controller.getPlaybackState());
+  }
+
+  /**
+   * Stops listening controller. Clock keeps its last state.
+   */
+  public void detach() {
+    if (mController != null) {
+      mController.unregisterCallback(this);
+      mController = null;
+    }
+  }
+
+  @Override public void onPlaybackStateChanged(PlaybackState state) {
+    applyPlaybackState(mClock, state);
+  }
+
+  @Override public void onMetadataChanged(MediaMetadata metadata) {
+    if (metadata != null && metadata.containsKey(MediaMetadata.METADATA_KEY_DURATION)) {
+      mClock.setDurationMs(metadata.getLong(MediaMetadata.METADATA_KEY_DURATION));
+    }
+  }
+
+  /**
+   * Anchors clock to position and update time of state. Position moves only while playing.
+   */
+  public static void applyPlaybackState(PlaybackClock clock, PlaybackState state) {
+    if (state == null || state.getPosition() == PlaybackState.PLAYBACK_POSITION_UNKNOWN) return;
+
+    float speed = state.getState() == PlaybackState.STATE_PLAYING ? state.getPlaybackSpeed() : 0f;
+    clock.update(state.getPosition(), speed, state.getLastPositionUpdateTime());
+  }
+}
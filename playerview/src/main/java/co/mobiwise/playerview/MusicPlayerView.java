@@ -15,8 +15,7 @@
 */
 package co.mobiwise.playerview;
 
-import android.animation.Animator;
-import android.animation.AnimatorSet;
+import android.animation.ValueAnimator;
 import android.annotation.TargetApi;
 import android.content.Context;
 import android.content.res.TypedArray;
@@ -34,40 +33,76 @@ import android.graphics.drawable.BitmapDrawable;
 import android.graphics.drawable.Drawable;
 import android.os.Build;
 import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
 import android.util.AttributeSet;
+import android.view.Choreographer;
 import android.view.MotionEvent;
+import android.view.TextureView;
 import android.view.View;
-import android.view.animation.DecelerateInterpolator;
+import android.view.ViewGroup;
+import android.view.ViewTreeObserver;
+import android.view.WindowManager;
 
-import com.squareup.picasso.Picasso;
-import com.squareup.picasso.Target;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 
-public class MusicPlayerView extends View implements OnPlayPauseToggleListener {
+/**
+ * Music player with rotating cover, play/pause button and progress arc. It is a ViewGroup,
+ * cover is a child view which turns by its rotation property. Setters must be called on
+ * main thread, update(), start(), stop() and updateCoverRotate() can be called on any
+ * thread.
+ */
+public class MusicPlayerView extends ViewGroup implements OnPlayPauseToggleListener {
 
   /**
-   * Rect for get time height and width
+   * Draws button, progress and time texts. It keeps measured time texts.
    */
-  private static Rect mRectText;
+  private final ControlsPainter mPainter = new ControlsPainter();
 
   /**
-   * Paint for drawing left and passed time.
+   * Buffer to format time text for invalidating out of onDraw()
    */
-  private static Paint mPaintTime;
+  private final char[] mMeasureTimeChars = new char[ControlsPainter.TIME_CHARS_LENGTH];
 
   /**
-   * RectF for draw circle progress.
+   * Time text positions before they are shifted by text width.
+   * Calculated once for each size.
    */
-  private RectF rectF;
+  private float mLeftTimeX;
+  private float mPassedTimeX;
+  private float mTimeY;
+
+  /**
+   * Shared paints for button, progress and time. Style is immutable.
+   * Same colors on other player views use same style object.
+   */
+  private PlayerStyle mStyle;
+
+  /**
+   * Rect for measure time texts out of onDraw()
+   */
+  private Rect mRectTextMeasure;
 
   /**
-   * Paint for circle progress left
+   * Dirty area of view which will be invalidated.
    */
-  private static Paint mPaintProgressEmpty;
+  private Rect mRectDirty;
+  private RectF mRectDirtyPart;
 
   /**
-   * Paint for circle progress loaded
+   * Invalidated pixel count in current second and result of last second.
    */
-  private static Paint mPaintProgressLoaded;
+  private long mInvalidatedPixels;
+  private long mInvalidatedPixelsPerSecond;
+  private long mInvalidateWindowStartMs;
+
+  /**
+   * RectF for draw circle progress.
+   */
+  private RectF rectF;
 
   /**
    * Modified OnClickListener. We do not want all view click.
@@ -76,19 +111,131 @@ public class MusicPlayerView extends View implements OnPlayPauseToggleListener {
   private OnClickListener onClickListener;
 
   /**
-   * Button paint for play/pause control button
+   * Notified when user drags on progress arc.
+   */
+  private OnSeekListener mOnSeekListener;
+
+  /**
+   * Seek callbacks are not sent more often than this while dragging.
+   */
+  static final long SEEK_DISPATCH_INTERVAL_MS = 100;
+
+  /**
+   * Touch is accepted this far from middle of progress arc stroke, in dp.
+   */
+  private static final float SEEK_TOUCH_SLOP_DP = 24f;
+
+  private boolean mSeekEnabled = true;
+
+  /**
+   * True while user drags on arc. Progress shows mSeekPositionMs then.
+   */
+  private boolean mSeeking;
+  private long mSeekPositionMs;
+
+  /**
+   * True if drag moved after last onSeek callback.
+   */
+  private boolean mSeekPending;
+  private long mLastSeekDispatchMs;
+
+  /**
+   * State published by update() and not applied yet. States published before it is
+   * applied are merged into it, so they are applied together.
+   */
+  private final PendingPlayerState mPendingState = new PendingPlayerState();
+
+  /**
+   * Posts from other threads. View.post() of a detached view keeps runnable in a queue
+   * of its thread before API 24, so posts of a background thread never run.
    */
-  private static Paint mPaintButton;
+  private static final Handler sMainHandler = new Handler(Looper.getMainLooper());
+
+  /**
+   * True if cover is default colored cover. Its palette is not extracted.
+   */
+  private boolean mCoverIsDefault;
+
+  /**
+   * Palette theming. Colors of button, loaded progress and time are taken from cover.
+   */
+  private static final long PALETTE_CROSSFADE_DURATION = 300;
+  private boolean mPaletteThemeEnabled;
+  private Future<?> mPaletteRequest;
+  private CoverPalette mPalette;
+  private ValueAnimator mPaletteAnimator;
+
+  /**
+   * Colors which crossfade starts from and goes to: button, loaded progress, time.
+   */
+  private final int[] mPaletteFromColors = new int[3];
+  private final int[] mPaletteToColors = new int[3];
+
+  /**
+   * Private style which colors are changed while crossfading, null when not crossfading.
+   * In render thread mode the two styles take turns, one is published while colors of
+   * the other are changed.
+   */
+  private PlayerStyle mPaletteStyle;
+  private final PlayerStyle[] mPaletteStyles = new PlayerStyle[2];
+
+  private final CoverPalette.Callback mPaletteCallback = new CoverPalette.Callback() {
+    @Override public void onPaletteExtracted(Bitmap bitmap, CoverPalette palette) {
+      if (bitmap != mBitmapCoverSource) return;
+      mPaletteRequest = null;
+      applyPalette(palette);
+    }
+  };
+
+  /**
+   * Render thread mode. Everything is drawn into mRenderView on mRenderThread.
+   * Thread runs only while view is attached.
+   */
+  private boolean mRenderThreadEnabled;
+  private TextureView mRenderView;
+  private PlayerRenderThread mRenderThread;
+
+  /**
+   * Stopped render threads which may still be drawing their last frame. Covers are
+   * released only after these have finished.
+   */
+  private final ArrayList<PlayerRenderThread> mStoppingRenderThreads =
+      new ArrayList<PlayerRenderThread>();
+
+  /**
+   * start() and stop() of another thread go through update(), so they are ordered
+   * with states published around them.
+   */
+  private static final PlayerState STATE_PLAYING = new PlayerState.Builder()
+      .setPlaying(true)
+      .build();
+  private static final PlayerState STATE_STOPPED = new PlayerState.Builder()
+      .setPlaying(false)
+      .build();
+
+  /**
+   * While a state is applied, invalidates are collected here and view is invalidated
+   * once after it.
+   */
+  private boolean mApplyingState;
+  private boolean mStateDirtyAll;
+  private final Rect mRectStateDirty = new Rect();
+
+  private final Runnable mApplyStateRunnable = new Runnable() {
+    @Override public void run() {
+      applyState(mPendingState.take());
+    }
+  };
 
   /**
    * Play/Pause button region for handle onTouch
    */
-  private static Region mButtonRegion;
+  private Region mButtonRegion;
 
   /**
    * Paint to draw cover photo to canvas
    */
-  private static Paint mPaintCover;
+  private Paint mPaintCover;
 
   /**
    * Bitmap for shader.
@@ -96,15 +243,129 @@ public class MusicPlayerView extends View implements OnPlayPauseToggleListener {
   private Bitmap mBitmapCover;
 
   /**
-   * Shader for make drawable circle
+   * Cover image as it is set or decoded. mBitmapCover is scaled from this one,
+   * so we never scale an already scaled copy again.
+   */
+  private Bitmap mBitmapCoverSource;
+
+  /**
+   * Cover source which is decoded at view size. Null if cover is set as bitmap.
+   */
+  private CoverSource mCoverSource;
+
+  /**
+   * Key of mBitmapCoverSource for CoverCache. Null if cover can not be cached.
+   */
+  private String mCoverKey;
+
+  /**
+   * Cover url which is loaded by CoverLoader. Null if cover is not from url.
+   */
+  private String mCoverUrl;
+
+  /**
+   * View width which cover source or url is requested for.
+   */
+  private int mCoverRequestWidth;
+
+  /**
+   * Pending cover decode. It is cancelled when another cover is set.
+   */
+  private Future<?> mCoverDecode;
+
+  /**
+   * Pending cover url load. It is cancelled when another cover is set or view is detached.
+   */
+  private CoverLoader.Request mCoverLoad;
+
+  /**
+   * Callbacks of pending decode and load. Every request has its own, so a result of a
+   * cancelled request, like one for same source at an old width, is recognized.
+   */
+  private CoverDecodeCallback mCoverDecodeCallback;
+  private CoverLoadCallback mCoverLoadCallback;
+
+  /**
+   * Placeholder of mCoverLoad while loader is starting.
+   */
+  private static final CoverLoader.Request LOAD_STARTING = new CoverLoader.Request() {
+    @Override public void cancel() {
+
+    }
+  };
+
+  /**
+   * Loader for cover urls. Null means default loader.
+   */
+  private CoverLoader mCoverLoader;
+
+  /**
+   * Default loader shared by all player views, so same url is loaded once at a time.
+   */
+  private static CoverLoader sDefaultCoverLoader;
+
+  /**
+   * Bitmap config for decoded covers. RGB_565 uses half memory for opaque covers.
+   */
+  private Bitmap.Config mCoverConfig = Bitmap.Config.ARGB_8888;
+
+  /**
+   * Shader for make drawable circle. Null for default colored cover.
    */
   private BitmapShader mShader;
 
+  /**
+   * CoverCache entries this view holds for mBitmapCoverSource and mBitmapCover.
+   * Null if that bitmap is not cached.
+   */
+  private CoverCache.Entry mSourceEntry;
+  private CoverCache.Entry mCoverEntry;
+
+  /**
+   * Replaced cover entries and bitmaps. They are released after new cover is published,
+   * then uncached bitmaps go to CoverBitmapPool.
+   */
+  private final ArrayList<Object> mReplacedCovers = new ArrayList<Object>();
+
+  /**
+   * Small cover quality scales cover on cover thread. Source is drawn scaled by shader
+   * until scaled cover is ready. Source is pinned in CoverBitmapPool while it is scaled.
+   */
+  private SmallCoverScale mSmallCoverScale;
+  private Bitmap mSmallCover;
+
+  /**
+   * Child view which draws only cover image. Rotating it changes its
+   * rotation property, so onDraw() is not called again while spinning.
+   */
+  private CoverView mCoverView;
+
   /**
    * Scale image to view width/height
    */
   private float mCoverScale;
 
+  /**
+   * Adaptive quality. Null if it is disabled, then quality is always full.
+   */
+  private QualityController mQuality;
+  private int mQualityLevel = QualityPolicy.LEVEL_FULL;
+
+  /**
+   * Display frame interval, frames later than it missed their vsync.
+   */
+  private long mFrameIntervalNanos = 1000000000L / 60;
+
+  /**
+   * On reduced frame rate rotation is updated when this is true, every second frame.
+   */
+  private boolean mRotateThisFrame;
+
+  /**
+   * Cover circle radius
+   */
+  private float mCoverRadius;
+
   /**
    * Image Height and Width values.
    */
@@ -120,69 +381,119 @@ public class MusicPlayerView extends View implements OnPlayPauseToggleListener {
   /**
    * Cover image is rotating. That is why we hold that value.
    */
-  private int mRotateDegrees;
+  private float mRotateDegrees;
 
   /**
-   * Handler for posting runnable object
+   * Shared ticker for posting rotation frames. It calls us once per vsync,
+   * together with other players on screen.
    */
-  private Handler mHandlerRotate;
+  private PlayerTicker mTicker;
 
   /**
-   * Runnable for turning image (default velocity is 10)
+   * Frame time of the last rotation frame in nanoseconds. 0 means no frame yet.
    */
-  private final Runnable mRunnableRotate = new Runnable() {
-    @Override public void run() {
-      if (isRotating) {
+  private long mLastFrameTimeNanos;
 
-        if (currentProgress > maxProgress) {
-          currentProgress = 0;
-          setProgress(currentProgress);
-          stop();
-        }
+  /**
+   * True if a frame callback is posted and not run yet.
+   */
+  private boolean mFramePosted;
 
-        updateCoverRotate();
-        mHandlerRotate.postDelayed(mRunnableRotate, ROTATE_DELAY);
-      }
+  /**
+   * Frame callback for turning image and moving progress. Rotation is calculated from
+   * elapsed frame time and progress from playback clock, so they do not depend on
+   * display refresh rate. It runs while cover is rotating or clock is running.
+   */
+  private final Choreographer.FrameCallback mFrameCallback = new Choreographer.FrameCallback() {
+    @Override public void doFrame(long frameTimeNanos) {
+      mFramePosted = false;
+      if (mStats != null) mStats.recordFrame(frameTimeNanos, System.nanoTime());
+      runFrame(frameTimeNanos);
     }
   };
 
   /**
-   * Handler for posting runnable object
+   * Rotates cover, moves progress and schedules next frame if it is needed.
    */
-  private Handler mHandlerProgress;
+  private void runFrame(long frameTimeNanos) {
+    if (mQuality != null && mRenderThread == null
+        && mQuality.onFrame(frameTimeNanos, mFrameIntervalNanos)) {
+      applyQualityLevel(mQuality.getLevel());
+    }
+
+    mRotateThisFrame =
+        !mRotateThisFrame || mQualityLevel < QualityPolicy.LEVEL_REDUCED_FRAME_RATE;
+    if (isRotating && mRenderThread == null && mRotateThisFrame) {
+      updateCoverRotate(frameTimeNanos);
+    }
+    updateProgress();
+
+    //Auto progress starts from beginning when music ends
+    if (isRotating && !mSeeking && mClock == mAutoClock && mDurationMs > 0
+        && mPositionMs >= mDurationMs) {
+      stop();
+      mAutoClock.setPositionMs(0);
+      updateProgress();
+      breakFrames();
+      return;
+    }
+
+    boolean spectrumChanged = mSpectrum != null && updateSpectrum();
+
+    if (mSeeking) dispatchSeek(false);
+
+    if (isRotating || mClock.isRunning() || spectrumChanged || mSeeking) {
+      scheduleFrame();
+    } else {
+      breakFrames();
+      //Producer posts a frame when spectrum comes again
+      if (mSpectrum != null && mSpectrum.requestWakeup()) scheduleFrame();
+    }
+  }
 
   /**
-   * Runnable for turning image (default velocity is 10)
+   * Clock changes can come from player thread. Frame is scheduled on main thread.
    */
-  private Runnable mRunnableProgress = new Runnable() {
+  private final Runnable mScheduleFrameRunnable = new Runnable() {
     @Override public void run() {
-      if (isRotating) {
-        currentProgress++;
-        mHandlerProgress.postDelayed(mRunnableProgress, PROGRESS_SECOND_MS);
-      }
+      scheduleFrame();
     }
   };
 
   /**
-   * isRotating
+   * updateCoverRotate() of another thread. Cover view is rotated on main thread.
    */
-  private boolean isRotating;
+  private final Runnable mCoverRotateRunnable = new Runnable() {
+    @Override public void run() {
+      updateCoverRotate(System.nanoTime());
+    }
+  };
+
+  private final PlaybackClock.OnClockChangeListener mClockListener =
+      new PlaybackClock.OnClockChangeListener() {
+        @Override public void onClockChanged(PlaybackClock clock) {
+          if (Looper.myLooper() == Looper.getMainLooper()) {
+            scheduleFrame();
+          } else {
+            sMainHandler.post(mScheduleFrameRunnable);
+          }
+        }
+      };
 
   /**
-   * Handler will post runnable object every @ROTATE_DELAY seconds.
+   * isRotating
    */
-  private static int ROTATE_DELAY = 10;
+  private boolean isRotating;
 
   /**
-   * 1 sn = 1000 ms
+   * Default rotation speed. Old handler loop turned 1 degree every 10 ms.
    */
-  private static int PROGRESS_SECOND_MS = 1000;
+  private static final float DEFAULT_DEGREES_PER_SECOND = 100f;
 
   /**
-   * mRotateDegrees count increase 1 by 1 default.
-   * I used that parameter as velocity.
+   * Rotation speed of cover image in degrees per second.
    */
-  private static int VELOCITY = 1;
+  private float mDegreesPerSecond = DEFAULT_DEGREES_PER_SECOND;
 
   /**
    * Default color code for cover
@@ -220,14 +531,124 @@ public class MusicPlayerView extends View implements OnPlayPauseToggleListener {
   private int mTextColor = 0xFFFFFFFF;
 
   /**
-   * Current progress value
+   * Default music duration, 100 seconds.
+   */
+  private static final long DEFAULT_DURATION_MS = 100 * 1000L;
+
+  /**
+   * Position and duration which are drawn now in milliseconds. They are read
+   * from playback clock on every frame.
+   */
+  private long mPositionMs = 0;
+  private long mDurationMs = DEFAULT_DURATION_MS;
+
+  /**
+   * Loaded progress degree which is drawn now.
+   */
+  private float mDrawnDegree;
+
+  /**
+   * Clock of auto progress. It runs while cover is rotating.
+   */
+  private final PlaybackClock mAutoClock = new PlaybackClock(DEFAULT_DURATION_MS);
+
+  /**
+   * Clock which progress is read from. It is mAutoClock unless another clock is set.
+   */
+  private PlaybackClock mClock = mAutoClock;
+
+  /**
+   * True while view is attached. Clock is listened only while attached.
+   */
+  private boolean mAttached;
+
+  /**
+   * Opt-in cost statistics. Nothing is measured while it is null.
+   */
+  private PlayerViewStats mStats;
+
+  /**
+   * Start time of pending cover decode or load for stats.
+   */
+  private long mCoverRequestStartNanos;
+
+  /**
+   * Time when a cover was set for stats, 0 if its first frame is already recorded.
+   * Cover arrived is true when it is in mPaintCover and next cover draw shows it.
+   */
+  private long mCoverSwapStartNanos;
+  private boolean mCoverSwapArrived;
+
+  /**
+   * Prepares upcoming covers. Null until covers are prefetched.
+   */
+  private CoverPrefetcher mPrefetcher;
+
+  /**
+   * Max bar count of spectrum ring. Bins of bigger frames are grouped.
+   */
+  private static final int MAX_SPECTRUM_BARS = 64;
+
+  /**
+   * Spectrum frames are read from this buffer in visualizer mode. Null if disabled.
+   */
+  private SpectrumBuffer mSpectrum;
+
+  /**
+   * Newest spectrum frame, bar heights and lines of bars as x0, y0, x1, y1.
+   * They are allocated when spectrum buffer is set, not while drawing.
+   */
+  private float[] mSpectrumFrame;
+  private float[] mSpectrumLines;
+  private float[] mSpectrumCos;
+  private float[] mSpectrumSin;
+  private int mSpectrumBarCount;
+
+  /**
+   * Spectrum bars are drawn between cover edge and progress arc.
+   */
+  private float mSpectrumInnerRadius;
+  private float mSpectrumOuterRadius;
+
+  private final Paint mSpectrumPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+
+  /**
+   * Audio thread wakes us up with this when frames start coming again.
+   */
+  private final SpectrumBuffer.OnFrameAvailableListener mSpectrumListener =
+      new SpectrumBuffer.OnFrameAvailableListener() {
+        @Override public void onFrameAvailable(SpectrumBuffer buffer) {
+          sMainHandler.post(mScheduleFrameRunnable);
+        }
+      };
+
+  /**
+   * True if view can be seen: attached, shown, its window is visible and it is
+   * not scrolled out of screen. Frames are not posted while it can not be seen.
+   */
+  private boolean mCanBeSeen;
+
+  /**
+   * Rect for checking visible part of view on screen.
    */
-  private int currentProgress = 0;
+  private final Rect mRectVisible = new Rect();
 
   /**
-   * Max progress value
+   * Scrolling or layout of parents can move view in or out of screen.
    */
-  private int maxProgress = 100;
+  private final ViewTreeObserver.OnScrollChangedListener mScrollListener =
+      new ViewTreeObserver.OnScrollChangedListener() {
+        @Override public void onScrollChanged() {
+          updateCanBeSeen();
+        }
+      };
+
+  private final ViewTreeObserver.OnGlobalLayoutListener mLayoutListener =
+      new ViewTreeObserver.OnGlobalLayoutListener() {
+        @Override public void onGlobalLayout() {
+          updateCanBeSeen();
+        }
+      };
 
   /**
    * Auto progress value start progressing when
@@ -250,12 +671,16 @@ public class MusicPlayerView extends View implements OnPlayPauseToggleListener {
    */
   private PlayPauseDrawable mPlayPauseDrawable;
 
+  private boolean mFirstDraw = true;
+
   /**
-   * Animator set for play pause toggle
+   * Optional cached bitmap of button, empty progress and settled icon.
    */
-  private AnimatorSet mAnimatorSet;
-
-  private boolean mFirstDraw = true;
+  private boolean mStaticLayerEnabled;
+  private Bitmap mStaticLayer;
+  private Canvas mStaticLayerCanvas;
+  private boolean mStaticLayerDirty = true;
+  private boolean mStaticLayerHasIcon;
 
   /**
    * Constructor
@@ -298,14 +723,17 @@ public class MusicPlayerView extends View implements OnPlayPauseToggleListener {
   private void init(Context context, AttributeSet attrs) {
 
     setWillNotDraw(false);
+    mCoverView = new CoverView(context);
+    addView(mCoverView);
+
     mPlayPauseDrawable = new PlayPauseDrawable(context);
     mPlayPauseDrawable.setCallback(callback);
     mPlayPauseDrawable.setToggleListener(this);
 
     //Get Image resource from xml
     TypedArray a = context.obtainStyledAttributes(attrs, R.styleable.playerview);
-    Drawable mDrawableCover = a.getDrawable(R.styleable.playerview_cover);
-    if (mDrawableCover != null) mBitmapCover = drawableToBitmap(mDrawableCover);
+    int coverResource = a.getResourceId(R.styleable.playerview_cover, 0);
+    if (coverResource != 0) mCoverSource = CoverSource.fromResource(coverResource);
 
     mButtonColor = a.getColor(R.styleable.playerview_buttonColor, mButtonColor);
     mProgressEmptyColor =
@@ -318,62 +746,69 @@ public class MusicPlayerView extends View implements OnPlayPauseToggleListener {
 
     mRotateDegrees = 0;
 
-    //Handler and Runnable object for turn cover image by updating rotation degrees
-    mHandlerRotate = new Handler();
-
-    //Handler and Runnable object for progressing.
-    mHandlerProgress = new Handler();
-
-    //Play/Pause button circle paint
-    mPaintButton = new Paint();
-    mPaintButton.setAntiAlias(true);
-    mPaintButton.setStyle(Paint.Style.FILL);
-    mPaintButton.setColor(mButtonColor);
+    //Ticker for turn cover image by updating rotation degrees every frame
+    mTicker = PlayerTicker.getInstance();
 
-    //Progress paint object creation
-    mPaintProgressEmpty = new Paint();
-    mPaintProgressEmpty.setAntiAlias(true);
-    mPaintProgressEmpty.setColor(mProgressEmptyColor);
-    mPaintProgressEmpty.setStyle(Paint.Style.STROKE);
-    mPaintProgressEmpty.setStrokeWidth(12.0f);
+    //Button, progress and time paints
+    updateStyle();
 
-    mPaintProgressLoaded = new Paint();
-    mPaintProgressEmpty.setAntiAlias(true);
-    mPaintProgressLoaded.setColor(mProgressLoadedColor);
-    mPaintProgressLoaded.setStyle(Paint.Style.STROKE);
-    mPaintProgressLoaded.setStrokeWidth(12.0f);
+    //Spectrum ring has progress color unless it is set
+    mSpectrumPaint.setColor(mProgressLoadedColor);
 
-    mPaintTime = new Paint();
-    mPaintTime.setColor(mTextColor);
-    mPaintTime.setAntiAlias(true);
-    mPaintTime.setTextSize(mTextSize);
+    mButtonRegion = new Region();
 
     //rectF and rect initializes
     rectF = new RectF();
-    mRectText = new Rect();
+    mRectTextMeasure = new Rect();
+    mRectDirty = new Rect();
+    mRectDirtyPart = new RectF();
   }
 
   /**
-   * Calculate mWidth, mHeight, mCenterX, mCenterY values and
-   * scale resource bitmap. Create shader. This is not called multiple times.
+   * Measures only. Cover view is only as big as cover circle, rotating it damages only
+   * that area. Size dependent work is done in onSizeChanged(), so repeated measure
+   * passes do not scale bitmaps or create objects.
    */
   @Override protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
+    int minSide =
+        Math.min(MeasureSpec.getSize(widthMeasureSpec), MeasureSpec.getSize(heightMeasureSpec));
+
+    int coverSize = (int) (2 * calculateCoverRadius(minSide));
+    mCoverView.measure(MeasureSpec.makeMeasureSpec(coverSize, MeasureSpec.EXACTLY),
+        MeasureSpec.makeMeasureSpec(coverSize, MeasureSpec.EXACTLY));
+    if (mRenderView != null) {
+      mRenderView.measure(MeasureSpec.makeMeasureSpec(minSide, MeasureSpec.EXACTLY),
+          MeasureSpec.makeMeasureSpec(minSide, MeasureSpec.EXACTLY));
+    }
+
+    super.onMeasure(widthMeasureSpec, heightMeasureSpec);
+  }
+
+  /**
+   * Calculate mWidth, mHeight, mCenterX, mCenterY values and
+   * scale resource bitmap. Create shader. Nothing is done if size is same.
+   */
+  @Override protected void onSizeChanged(int w, int h, int oldw, int oldh) {
+    super.onSizeChanged(w, h, oldw, oldh);
 
-    mWidth = MeasureSpec.getSize(widthMeasureSpec);
-    mHeight = MeasureSpec.getSize(heightMeasureSpec);
+    int minSide = Math.min(w, h);
+    if (minSide == mWidth) return;
 
-    int minSide = Math.min(mWidth, mHeight);
     mWidth = minSide;
     mHeight = minSide;
 
-    this.setMeasuredDimension(mWidth, mHeight);
-
     mCenterX = mWidth / 2f;
     mCenterY = mHeight / 2f;
 
     //set RectF left, top, right, bottom coordiantes
     rectF.set(20.0f, 20.0f, mWidth - 20.0f, mHeight - 20.0f);
 
+    //Time texts are placed on 35 degree from center. Texts are measured again on next draw.
+    mLeftTimeX = (float) (mCenterX * Math.cos(Math.toRadians(35.0))) + mWidth / 2.0f;
+    mPassedTimeX = (float) (mCenterX * -Math.cos(Math.toRadians(35.0))) + mWidth / 2.0f;
+    mTimeY = (float) (mCenterX * Math.sin(Math.toRadians(35.0))) + mHeight / 2.0f + 15.0f;
+    mPainter.resetTimeTexts();
+
     //button size is about to 1/4 of image size then we divide it to 8.
     mButtonRadius = mWidth / 8.0f;
 
@@ -382,71 +817,147 @@ public class MusicPlayerView extends View implements OnPlayPauseToggleListener {
         (mButtonRadius / 5.0f));
 
     mPlayPauseDrawable.setBounds(0, 0, mWidth, mHeight);
+    mStaticLayerDirty = true;
 
-    mButtonRegion = new Region((int) (mCenterX - mButtonRadius), (int) (mCenterY - mButtonRadius),
+    mButtonRegion.set((int) (mCenterX - mButtonRadius), (int) (mCenterY - mButtonRadius),
         (int) (mCenterX + mButtonRadius), (int) (mCenterY + mButtonRadius));
 
-    createShader();
+    mCoverRadius = calculateCoverRadius(mWidth);
+    updateSpectrumGeometry();
 
-    super.onMeasure(widthMeasureSpec, heightMeasureSpec);
+    requestCover();
+    createShader();
+    updatePrefetchTarget();
   }
 
   /**
-   * This is where magic happens as you know.
+   * Cover circle radius for a view side.
    */
-  @Override protected void onDraw(Canvas canvas) {
-    super.onDraw(canvas);
-
-    if (mShader == null) return;
-
-    //Draw cover image
-    float radius = mCenterX <= mCenterY ? mCenterX - 75.0f : mCenterY - 75.0f;
-    canvas.rotate(mRotateDegrees, mCenterX, mCenterY);
-    canvas.drawCircle(mCenterX, mCenterY, radius, mPaintCover);
-
-    //Rotate back to make play/pause button stable(No turn)
-    canvas.rotate(-mRotateDegrees, mCenterX, mCenterY);
+  private static float calculateCoverRadius(int side) {
+    return Math.max(0f, side / 2f - 75.0f);
+  }
 
-    //Draw Play/Pause button
-    canvas.drawCircle(mCenterX, mCenterY, mButtonRadius, mPaintButton);
+  /**
+   * Cover view is centered, so it rotates around our center.
+   */
+  @Override protected void onLayout(boolean changed, int l, int t, int r, int b) {
+    int left = Math.round(mCenterX - mCoverView.getMeasuredWidth() / 2f);
+    int top = Math.round(mCenterY - mCoverView.getMeasuredHeight() / 2f);
+    mCoverView.layout(left, top, left + mCoverView.getMeasuredWidth(),
+        top + mCoverView.getMeasuredHeight());
+    if (mRenderView != null) {
+      mRenderView.layout(0, 0, mRenderView.getMeasuredWidth(), mRenderView.getMeasuredHeight());
+    }
+  }
 
-    if (mProgressVisibility) {
-      //Draw empty progress
-      canvas.drawArc(rectF, 145, 250, false, mPaintProgressEmpty);
+  /**
+   * We are not a scrolling container. Do not delay pressed state.
+   */
+  @Override public boolean shouldDelayChildPressedState() {
+    return false;
+  }
 
-      //Draw loaded progress
-      canvas.drawArc(rectF, 145, calculatePastProgressDegree(), false, mPaintProgressLoaded);
+  /**
+   * Cover image is drawn by mCoverView. Button, progress and time
+   * must be drawn over it, that is why we draw them after children.
+   */
+  @Override protected void dispatchDraw(Canvas canvas) {
+    long startNanos = mStats != null ? System.nanoTime() : 0;
+    super.dispatchDraw(canvas);
+    if (mRenderView == null) {
+      drawControls(canvas);
+    } else if (mFirstDraw && mPaintCover != null) {
+      //Render thread draws controls into its texture, button still starts as play
+      toggle();
+      mFirstDraw = false;
+    }
+    if (mStats != null) mStats.recordDraw(startNanos, System.nanoTime());
+  }
 
-      //Draw left time text
-      String leftTime = secondsToTime(calculateLeftSeconds());
-      mPaintTime.getTextBounds(leftTime, 0, leftTime.length(), mRectText);
+  /**
+   * Draws button, progress and time over cover.
+   */
+  private void drawControls(Canvas canvas) {
+    if (mPaintCover == null) return;
 
-      canvas.drawText(leftTime, (float) (mCenterX * Math.cos(Math.toRadians(35.0))) + mWidth / 2.0f
-          - mRectText.width() / 1.5f,
-          (float) (mCenterX * Math.sin(Math.toRadians(35.0))) + mHeight / 2.0f + mRectText.height()
-              + 15.0f, mPaintTime);
+    if (mFirstDraw) {
+      toggle();
+      mFirstDraw = false;
+    }
 
-      //Draw passed time text
-      String passedTime = secondsToTime(calculatePassedSeconds());
-      mPaintTime.getTextBounds(passedTime, 0, passedTime.length(), mRectText);
+    boolean iconInLayer = false;
+    if (mStaticLayerEnabled) {
+      //Button, empty progress and settled icon are drawn with one bitmap
+      iconInLayer = mPlayPauseDrawable.isSettled();
+      if (mStaticLayerDirty || iconInLayer != mStaticLayerHasIcon) buildStaticLayer(iconInLayer);
+      canvas.drawBitmap(mStaticLayer, 0, 0, null);
+    } else {
+      drawStaticParts(canvas);
+    }
 
-      canvas.drawText(passedTime,
-          (float) (mCenterX * -Math.cos(Math.toRadians(35.0))) + mWidth / 2.0f
-              - mRectText.width() / 3.0f,
-          (float) (mCenterX * Math.sin(Math.toRadians(35.0))) + mHeight / 2.0f + mRectText.height()
-              + 15.0f, mPaintTime);
+    //Draw spectrum ring with one call
+    if (mSpectrum != null && mSpectrumBarCount > 0) {
+      canvas.drawLines(mSpectrumLines, 0, mSpectrumBarCount * 4, mSpectrumPaint);
     }
 
-    if (mFirstDraw) {
-      toggle();
-      mFirstDraw = false;
+    if (mProgressVisibility) {
+      //Draw loaded progress. Time texts are the first thing dropped under jank.
+      mDrawnDegree = mPainter.drawProgress(canvas, mStyle, rectF, mPositionMs, mDurationMs,
+          mQualityLevel < QualityPolicy.LEVEL_NO_TIME_TEXT, mLeftTimeX, mPassedTimeX, mTimeY);
     }
 
-    mPlayPauseDrawable.draw(canvas);
+    if (!iconInLayer) mPlayPauseDrawable.draw(canvas);
   }
 
   /**
-   * We need to convert drawable (which we get from attributes) to bitmap
+   * Draws parts which do not change with progress: button and empty progress.
+   */
+  private void drawStaticParts(Canvas canvas) {
+    ControlsPainter.drawStaticParts(canvas, mStyle, mCenterX, mCenterY, mButtonRadius, rectF,
+        mProgressVisibility);
+  }
+
+  /**
+   * Draws static parts, and icon if it is settled, into static layer bitmap.
+   */
+  private void buildStaticLayer(boolean withIcon) {
+    if (mStaticLayer == null || mStaticLayer.getWidth() != mWidth
+        || mStaticLayer.getHeight() != mHeight) {
+      mStaticLayer = Bitmap.createBitmap(mWidth, mHeight, Bitmap.Config.ARGB_8888);
+      mStaticLayerCanvas = new Canvas(mStaticLayer);
+    } else {
+      mStaticLayer.eraseColor(Color.TRANSPARENT);
+    }
+
+    drawStaticParts(mStaticLayerCanvas);
+    if (withIcon) mPlayPauseDrawable.draw(mStaticLayerCanvas);
+
+    mStaticLayerHasIcon = withIcon;
+    mStaticLayerDirty = false;
+  }
+
+  /**
+   * Draws button, empty progress and settled play/pause icon from a cached bitmap
+   * of view size, so a frame draws only cover, loaded progress and time. Layer is
+   * built again when colors, size or progress visibility change. It costs a view
+   * sized ARGB_8888 bitmap, so it is disabled by default.
+   */
+  public void setStaticLayerEnabled(boolean enabled) {
+    mStaticLayerEnabled = enabled;
+    if (!enabled) {
+      mStaticLayer = null;
+      mStaticLayerCanvas = null;
+    }
+    mStaticLayerDirty = true;
+    invalidateAll();
+  }
+
+  public boolean isStaticLayerEnabled() {
+    return mStaticLayerEnabled;
+  }
+
+  /**
+   * We need to convert drawable (which we get from attributes) to bitmap
    * to prepare if for BitmapShader
    */
   private Bitmap drawableToBitmap(Drawable drawable) {
@@ -454,299 +965,1881 @@ public class MusicPlayerView extends View implements OnPlayPauseToggleListener {
       return ((BitmapDrawable) drawable).getBitmap();
     }
 
-    int width = drawable.getIntrinsicWidth();
-    width = width > 0 ? width : 1;
-    int height = drawable.getIntrinsicHeight();
-    height = height > 0 ? height : 1;
+    int width = drawable.getIntrinsicWidth();
+    width = width > 0 ? width : 1;
+    int height = drawable.getIntrinsicHeight();
+    height = height > 0 ? height : 1;
+
+    Bitmap bitmap =
+        CoverBitmapPool.own(Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888));
+    Canvas canvas = new Canvas(bitmap);
+    drawable.setBounds(0, 0, canvas.getWidth(), canvas.getHeight());
+    drawable.draw(canvas);
+
+    return bitmap;
+  }
+
+  /**
+   * Draws rotating cover image. Its rotation is set by setRotation(), which only
+   * updates its display list properties. While rotating it has its own hardware layer.
+   */
+  private class CoverView extends View {
+
+    CoverView(Context context) {
+      super(context);
+    }
+
+    @Override protected void onDraw(Canvas canvas) {
+      if (mPaintCover == null) return;
+
+      //Shader is in parent coordinates. Draw cover image as parent does.
+      canvas.translate(-getLeft(), -getTop());
+      canvas.drawCircle(mCenterX, mCenterY, mCoverRadius, mPaintCover);
+
+      if (mCoverSwapArrived) {
+        if (mStats != null) mStats.recordCoverSwap(System.nanoTime() - mCoverSwapStartNanos);
+        mCoverSwapStartNanos = 0;
+        mCoverSwapArrived = false;
+      }
+    }
+  }
+
+  /**
+   * Measures time text, and writes its bounds on view to outBounds.
+   * Text must be drawn at (outBounds.left - textBounds.left, outBounds.bottom - textBounds.bottom)
+   */
+  private void measureTimeText(char[] time, int length, boolean isLeftTime, Rect textBounds,
+      RectF outBounds) {
+    ControlsPainter.placeTimeText(mStyle.timePaint, time, length,
+        isLeftTime ? mLeftTimeX : mPassedTimeX, mTimeY, isLeftTime, textBounds, outBounds);
+  }
+
+  /**
+   * Calculates bounds of progress arc part between startAngle and endAngle.
+   * Stroke width is included.
+   */
+  private void calculateArcBounds(float startAngle, float endAngle, RectF outBounds) {
+    float radius = rectF.width() / 2f;
+    float centerX = rectF.centerX();
+    float centerY = rectF.centerY();
+
+    double start = Math.toRadians(startAngle);
+    double end = Math.toRadians(endAngle);
+    float startX = centerX + radius * (float) Math.cos(start);
+    float startY = centerY + radius * (float) Math.sin(start);
+    outBounds.set(startX, startY, startX, startY);
+    outBounds.union(centerX + radius * (float) Math.cos(end),
+        centerY + radius * (float) Math.sin(end));
+
+    //Arc reaches circle edge on every axis it passes
+    for (int axis = 0; axis <= 720; axis += 90) {
+      if (startAngle < axis && axis < endAngle) {
+        double angle = Math.toRadians(axis);
+        outBounds.union(centerX + radius * (float) Math.cos(angle),
+            centerY + radius * (float) Math.sin(angle));
+      }
+    }
+
+    float halfStroke = PlayerStyle.PROGRESS_STROKE_WIDTH / 2f + 1f;
+    outBounds.inset(-halfStroke, -halfStroke);
+  }
+
+  /**
+   * Reads position and duration from clock. Invalidates if they are changed.
+   */
+  private void updateProgress() {
+    long durationMs = mClock.getDurationMs();
+    long positionMs = mSeeking ? mSeekPositionMs : mClock.getPositionMs();
+    //Duration can be changed by player thread between two reads
+    if (durationMs > 0 && positionMs > durationMs) positionMs = durationMs;
+    if (positionMs == mPositionMs && durationMs == mDurationMs) return;
+
+    mPositionMs = positionMs;
+    mDurationMs = durationMs;
+    invalidateProgress();
+  }
+
+  /**
+   * Invalidates loaded arc between drawn and new degree. Time texts are
+   * invalidated only if displayed seconds are changed.
+   */
+  private void invalidateProgress() {
+    if (!mProgressVisibility || mWidth == 0) return;
+
+    float newDegree = calculatePastProgressDegree();
+
+    mRectDirty.setEmpty();
+    if (mDrawnDegree != newDegree) {
+      calculateArcBounds(145 + Math.min(mDrawnDegree, newDegree),
+          145 + Math.max(mDrawnDegree, newDegree), mRectDirtyPart);
+      unionDirty(mRectDirtyPart);
+    }
+
+    int leftSeconds = calculateLeftSeconds();
+    int passedSeconds = calculatePassedSeconds();
+    if (!mPainter.hasTimeTexts(leftSeconds, passedSeconds)) {
+      //Old text bounds and new text bounds. Width of text can change.
+      unionDirty(mPainter.getLeftTimeBounds());
+      unionDirty(mPainter.getPassedTimeBounds());
+      int length = secondsToTime(leftSeconds, mMeasureTimeChars);
+      measureTimeText(mMeasureTimeChars, length, true, mRectTextMeasure, mRectDirtyPart);
+      unionDirty(mRectDirtyPart);
+      length = secondsToTime(passedSeconds, mMeasureTimeChars);
+      measureTimeText(mMeasureTimeChars, length, false, mRectTextMeasure, mRectDirtyPart);
+      unionDirty(mRectDirtyPart);
+    }
+
+    invalidateDirty();
+  }
+
+  /**
+   * Posts frame callback if it is not posted yet.
+   */
+  private void scheduleFrame() {
+    if (mFramePosted || !mCanBeSeen) return;
+    mFramePosted = true;
+    mTicker.postFrameCallback(mFrameCallback);
+  }
+
+  /**
+   * Frames are stopped or parked. Next frame is not judged by time since last one.
+   */
+  private void breakFrames() {
+    if (mStats != null) mStats.breakFrames();
+    if (mQuality != null) mQuality.breakFrames();
+  }
+
+  /**
+   * Parks rotation and progress when view can not be seen and resumes them when it can.
+   * Rotation continues from angle calculated with time passed while parked, and
+   * progress from playback clock, so both are at correct position after resume.
+   */
+  private void updateCanBeSeen() {
+    //Can be called by View constructor before we are initialized
+    if (mTicker == null) return;
+
+    boolean canBeSeen = mAttached && isShown() && getWindowVisibility() == VISIBLE
+        && getGlobalVisibleRect(mRectVisible);
+    if (canBeSeen == mCanBeSeen) return;
+    mCanBeSeen = canBeSeen;
+    if (mRenderThread != null) mRenderThread.setPaused(!canBeSeen);
+
+    if (canBeSeen) {
+      if (isRotating && mRenderThread == null) {
+        mCoverView.setLayerType(LAYER_TYPE_HARDWARE, null);
+      }
+      scheduleFrame();
+    } else {
+      mTicker.removeFrameCallback(mFrameCallback);
+      mFramePosted = false;
+      breakFrames();
+      //Hardware layer memory is not needed while parked
+      mCoverView.setLayerType(LAYER_TYPE_NONE, null);
+    }
+  }
+
+  @Override protected void onVisibilityChanged(View changedView, int visibility) {
+    super.onVisibilityChanged(changedView, visibility);
+    updateCanBeSeen();
+  }
+
+  @Override protected void onWindowVisibilityChanged(int visibility) {
+    super.onWindowVisibilityChanged(visibility);
+    updateCanBeSeen();
+  }
+
+  /**
+   * Invalidates whole progress arc.
+   */
+  private void invalidateArc() {
+    if (!mProgressVisibility || mWidth == 0) return;
+    mRectDirty.setEmpty();
+    calculateArcBounds(145, 395, mRectDirtyPart);
+    unionDirty(mRectDirtyPart);
+    invalidateDirty();
+  }
+
+  /**
+   * Invalidates both time texts.
+   */
+  private void invalidateTimeText() {
+    if (!mProgressVisibility) return;
+    mRectDirty.setEmpty();
+    unionDirty(mPainter.getLeftTimeBounds());
+    unionDirty(mPainter.getPassedTimeBounds());
+    invalidateDirty();
+  }
+
+  /**
+   * Invalidates play/pause button circle.
+   */
+  private void invalidateButton() {
+    mRectDirty.setEmpty();
+    mRectDirtyPart.set(mCenterX - mButtonRadius, mCenterY - mButtonRadius, mCenterX + mButtonRadius,
+        mCenterY + mButtonRadius);
+    mRectDirtyPart.inset(-1f, -1f);
+    unionDirty(mRectDirtyPart);
+    invalidateDirty();
+  }
+
+  /**
+   * Adds part to dirty area.
+   */
+  private void unionDirty(RectF part) {
+    if (part.isEmpty()) return;
+    mRectDirty.union((int) Math.floor(part.left), (int) Math.floor(part.top),
+        (int) Math.ceil(part.right), (int) Math.ceil(part.bottom));
+  }
+
+  /**
+   * Invalidates dirty area if anything changed. Software rendering redraws dirty area
+   * alone. Hardware rendering ignores dirty rects on API 21+ and redraws whole view.
+   */
+  private void invalidateDirty() {
+    if (mRectDirty.isEmpty()) return;
+    if (mApplyingState) {
+      mRectStateDirty.union(mRectDirty);
+      return;
+    }
+    if (mRenderThread != null) {
+      mRenderThread.requestRender();
+      return;
+    }
+    boolean whole = isHardwareAccelerated();
+    countInvalidatedPixels(whole ? (long) mWidth * mHeight
+        : (long) mRectDirty.width() * mRectDirty.height());
+    //On main thread invalidate directly, a posted invalidate is a message per call
+    if (Looper.myLooper() != Looper.getMainLooper()) {
+      postInvalidate(mRectDirty.left, mRectDirty.top, mRectDirty.right, mRectDirty.bottom);
+    } else if (whole) {
+      invalidate();
+    } else {
+      invalidate(mRectDirty.left, mRectDirty.top, mRectDirty.right, mRectDirty.bottom);
+    }
+  }
+
+  /**
+   * Invalidates whole view.
+   */
+  private void invalidateAll() {
+    if (mApplyingState) {
+      mStateDirtyAll = true;
+      return;
+    }
+    if (mRenderThread != null) {
+      mRenderThread.requestRender();
+      return;
+    }
+    countInvalidatedPixels((long) mWidth * mHeight);
+    if (Looper.myLooper() == Looper.getMainLooper()) {
+      invalidate();
+    } else {
+      postInvalidate();
+    }
+  }
+
+  /**
+   * Counts invalidated pixels. Result is calculated once a second.
+   */
+  private void countInvalidatedPixels(long pixels) {
+    long now = SystemClock.uptimeMillis();
+    if (mInvalidateWindowStartMs == 0) mInvalidateWindowStartMs = now;
+
+    long elapsed = now - mInvalidateWindowStartMs;
+    if (elapsed >= 1000) {
+      mInvalidatedPixelsPerSecond = mInvalidatedPixels * 1000 / elapsed;
+      mInvalidatedPixels = 0;
+      mInvalidateWindowStartMs = now;
+    }
+    mInvalidatedPixels += pixels;
+    if (mStats != null) mStats.recordInvalidate(pixels);
+  }
+
+  /**
+   * Returns pixels invalidated in last second. Rotating cover counts its
+   * rotated bounds for each frame. Other invalidates count dirty area with
+   * software rendering and whole view with hardware rendering.
+   */
+  public long getInvalidatedPixelsPerSecond() {
+    return mInvalidatedPixelsPerSecond;
+  }
+
+  /**
+   * Create shader and set shader to mPaintCover
+   */
+  private void createShader() {
+
+    if (mWidth == 0) {
+      releaseReplacedCovers();
+      return;
+    }
+    long startNanos = mStats != null ? System.nanoTime() : 0;
+
+    Bitmap cover = null;
+    CoverCache.Entry coverEntry = null;
+    BitmapShader shader = null;
+    Bitmap smallCover = mSmallCover;
+    mSmallCover = null;
+
+    //if mBitmapCoverSource is null then cover is only a colored circle, without bitmap
+    if (mBitmapCoverSource == null) {
+      mCoverKey = null;
+      mCoverIsDefault = true;
+    } else {
+      //Small cover quality scales cover to half width and draws it scaled up
+      int coverWidth = mQualityLevel >= QualityPolicy.LEVEL_SMALL_COVER ? mWidth / 2 : mWidth;
+
+      //Same cover may be already scaled for this width by another view
+      String cacheKey =
+          mCoverKey != null ? CoverCache.key(mCoverKey, coverWidth, mCoverConfig) : null;
+      coverEntry = cacheKey != null ? CoverCache.acquire(cacheKey) : null;
+
+      if (coverEntry == null) {
+        //Decoded covers are already view width. Do not scale them again.
+        boolean scaling = false;
+        if (mBitmapCoverSource.getWidth() == coverWidth) {
+          mCoverScale = 1f;
+          cover = mBitmapCoverSource;
+        } else if (coverWidth == mWidth) {
+          mCoverScale = ((float) coverWidth) / (float) mBitmapCoverSource.getWidth();
+          cover = CoverBitmapPool.scale(mBitmapCoverSource,
+              (int) (mBitmapCoverSource.getWidth() * mCoverScale),
+              (int) (mBitmapCoverSource.getHeight() * mCoverScale));
+        } else if (smallCover != null && smallCover.getWidth() == coverWidth) {
+          cover = smallCover;
+          smallCover = null;
+        } else {
+          //Quality is stepped down because frames are late, do not scale on main thread
+          requestSmallCover(coverWidth);
+          cover = mBitmapCoverSource;
+          scaling = true;
+        }
+
+        if (cacheKey != null && !scaling) {
+          coverEntry = CoverCache.acquire(cacheKey, cover, mSourceEntry);
+          //Another view cached same cover meanwhile, own copy is not needed
+          if (coverEntry.bitmap != cover && cover != mBitmapCoverSource) {
+            CoverBitmapPool.put(cover);
+          }
+        }
+      }
+
+      if (coverEntry != null) cover = coverEntry.bitmap;
+      if (coverEntry != null && coverWidth == mWidth) {
+        mCoverScale = ((float) mWidth) / (float) cover.getWidth();
+        shader = coverEntry.shader;
+      } else {
+        shader = new BitmapShader(cover, Shader.TileMode.CLAMP, Shader.TileMode.CLAMP);
+
+        //Cached shaders are shared, only own shader gets a matrix
+        if (coverWidth != mWidth) {
+          mCoverScale = ((float) mWidth) / (float) cover.getWidth();
+          Matrix matrix = new Matrix();
+          matrix.setScale(mCoverScale, mCoverScale);
+          shader.setLocalMatrix(matrix);
+        }
+      }
+
+      //Source which is cached as cover is shared now, it is released as an entry
+      if (mSourceEntry == null && coverEntry != null && cover == mBitmapCoverSource) {
+        CoverCache.acquire(coverEntry);
+        mSourceEntry = coverEntry;
+      }
+    }
+
+    replaceCover(mCoverEntry, mBitmapCover);
+    mCoverEntry = coverEntry;
+    mBitmapCover = cover;
+    mShader = shader;
+
+    mPaintCover = new Paint();
+    mPaintCover.setAntiAlias(mQualityLevel < QualityPolicy.LEVEL_NO_ANTI_ALIAS);
+    if (shader != null) {
+      mPaintCover.setShader(shader);
+    } else {
+      mPaintCover.setColor(mCoverColor);
+    }
+    publishScene();
+    releaseReplacedCovers();
+    if (smallCover != null) CoverBitmapPool.put(smallCover);
+
+    if (mStats != null) {
+      mStats.recordShaderBuild(System.nanoTime() - startNanos);
+      mStats.setCoverBytes(calculateCoverBytes());
+    }
+  }
+
+  /**
+   * Sets cover source bitmap, entry is its CoverCache entry held by caller or null.
+   * Replaced source is released after next createShader().
+   */
+  private void setCoverSource(Bitmap bitmap, String key, CoverCache.Entry entry) {
+    replaceCover(mSourceEntry, mBitmapCoverSource);
+    mBitmapCoverSource = bitmap;
+    mSourceEntry = entry;
+    mCoverKey = key;
+    mCoverIsDefault = false;
+    mCoverSwapArrived = mCoverSwapStartNanos != 0;
+  }
+
+  /**
+   * Queues a replaced cover for release. Cached covers are released as entries.
+   */
+  private void replaceCover(CoverCache.Entry entry, Bitmap bitmap) {
+    if (entry != null) {
+      mReplacedCovers.add(entry);
+    } else if (bitmap != null) {
+      mReplacedCovers.add(bitmap);
+    }
+  }
+
+  /**
+   * Releases replaced covers. Render thread may still be drawing its previous scene,
+   * then they are released after its current frame.
+   */
+  private void releaseReplacedCovers() {
+    if (mReplacedCovers.isEmpty()) return;
+
+    final ArrayList<Object> replaced = new ArrayList<Object>(mReplacedCovers.size());
+    for (Object cover : mReplacedCovers) {
+      //Same bitmap can be replaced and still be used as source or cover
+      if (cover != mBitmapCoverSource && cover != mBitmapCover) replaced.add(cover);
+    }
+    mReplacedCovers.clear();
+
+    Runnable release = new Runnable() {
+      @Override public void run() {
+        for (Object cover : replaced) {
+          if (cover instanceof CoverCache.Entry) {
+            CoverCache.release((CoverCache.Entry) cover);
+          } else {
+            CoverBitmapPool.put((Bitmap) cover);
+          }
+        }
+      }
+    };
+    runAfterRenderFrames(release);
+  }
+
+  /**
+   * Runs release when no render thread draws a frame which began before this call.
+   */
+  private void runAfterRenderFrames(Runnable release) {
+    for (int i = mStoppingRenderThreads.size() - 1; i >= 0; i--) {
+      if (mStoppingRenderThreads.get(i).isFinished()) mStoppingRenderThreads.remove(i);
+    }
+    int threads = mStoppingRenderThreads.size() + (mRenderThread != null ? 1 : 0);
+    if (threads == 0) {
+      release.run();
+      return;
+    }
+
+    //Count is set before any thread can run it
+    Runnable afterFrames = new AfterFramesRunnable(threads, release);
+    for (int i = 0; i < mStoppingRenderThreads.size(); i++) {
+      mStoppingRenderThreads.get(i).runAfterFrame(afterFrames);
+    }
+    if (mRenderThread != null) mRenderThread.runAfterFrame(afterFrames);
+  }
+
+  /**
+   * Scales source to small cover width on cover thread, unless it is being scaled.
+   */
+  private void requestSmallCover(int width) {
+    SmallCoverScale scale = mSmallCoverScale;
+    if (scale != null && scale.mSource == mBitmapCoverSource && scale.mWidth == width) return;
+
+    int height = (int) ((long) mBitmapCoverSource.getHeight() * width
+        / mBitmapCoverSource.getWidth());
+    mSmallCoverScale = new SmallCoverScale(mBitmapCoverSource, width, Math.max(1, height));
+    CoverBitmapPool.pin(mBitmapCoverSource);
+    CoverDecoder.submit(mSmallCoverScale);
+  }
+
+  /**
+   * Scales cover on cover thread, then swaps it in on main thread if view still
+   * draws same source at small cover quality.
+   */
+  private final class SmallCoverScale implements Runnable {
+    final Bitmap mSource;
+    final int mWidth;
+    final int mHeight;
+
+    SmallCoverScale(Bitmap source, int width, int height) {
+      mSource = source;
+      mWidth = width;
+      mHeight = height;
+    }
+
+    @Override public void run() {
+      Bitmap scaled = null;
+      try {
+        scaled = CoverBitmapPool.scale(mSource, mWidth, mHeight);
+      } finally {
+        CoverBitmapPool.unpin(mSource);
+        final Bitmap result = scaled;
+        CoverDecoder.postToMain(new Runnable() {
+          @Override public void run() {
+            onSmallCoverScaled(SmallCoverScale.this, result);
+          }
+        });
+      }
+    }
+  }
+
+  private void onSmallCoverScaled(SmallCoverScale scale, Bitmap scaled) {
+    boolean current = scale == mSmallCoverScale;
+    if (current) mSmallCoverScale = null;
+
+    if (current && scaled != null && scale.mSource == mBitmapCoverSource
+        && mQualityLevel >= QualityPolicy.LEVEL_SMALL_COVER && scale.mWidth == mWidth / 2) {
+      mSmallCover = scaled;
+      createShader();
+      mCoverView.invalidate();
+    } else {
+      CoverBitmapPool.put(scaled);
+    }
+  }
+
+  /**
+   * Runs its runnable when it has been run by every render thread.
+   */
+  private static final class AfterFramesRunnable implements Runnable {
+    private final AtomicInteger mRemaining;
+    private final Runnable mRunnable;
+
+    AfterFramesRunnable(int threads, Runnable runnable) {
+      mRemaining = new AtomicInteger(threads);
+      mRunnable = runnable;
+    }
+
+    @Override public void run() {
+      if (mRemaining.decrementAndGet() == 0) mRunnable.run();
+    }
+  }
+
+  /**
+   * Bytes of source and scaled cover bitmaps.
+   */
+  private long calculateCoverBytes() {
+    long bytes = 0;
+    if (mBitmapCoverSource != null) bytes += mBitmapCoverSource.getByteCount();
+    if (mBitmapCover != null && mBitmapCover != mBitmapCoverSource) {
+      bytes += mBitmapCover.getByteCount();
+    }
+    return bytes;
+  }
+
+  /**
+   * Update rotate degree of cover. Only cover view rotation property changes.
+   * It can be called from any thread, from others it is posted to main thread.
+   */
+  public void updateCoverRotate() {
+    if (Looper.myLooper() == Looper.getMainLooper()) {
+      updateCoverRotate(System.nanoTime());
+    } else {
+      sMainHandler.post(mCoverRotateRunnable);
+    }
+  }
+
+  /**
+   * Update rotate degree of cover by the time passed since last frame.
+   */
+  private void updateCoverRotate(long frameTimeNanos) {
+    if (mLastFrameTimeNanos != 0 && frameTimeNanos > mLastFrameTimeNanos) {
+      float elapsedSeconds = (frameTimeNanos - mLastFrameTimeNanos) / 1000000000f;
+      mRotateDegrees = (mRotateDegrees + mDegreesPerSecond * elapsedSeconds) % 360f;
+    }
+    mLastFrameTimeNanos = frameTimeNanos;
+    mCoverView.setRotation(mRotateDegrees);
+
+    //Rotated cover view damages its rotated bounds
+    double angle = Math.toRadians(mRotateDegrees);
+    float side =
+        mCoverView.getWidth() * (float) (Math.abs(Math.cos(angle)) + Math.abs(Math.sin(angle)));
+    countInvalidatedPixels((long) (side * side));
+  }
+
+  /**
+   * Checks is rotating
+   */
+  public boolean isRotating() {
+    return isRotating;
+  }
+
+  /**
+   * Start turning image. From another thread it is applied on main thread.
+   */
+  public void start() {
+    if (Looper.myLooper() != Looper.getMainLooper()) {
+      update(STATE_PLAYING);
+      return;
+    }
+
+    isRotating = true;
+    mPlayPauseDrawable.setPlaying(isRotating);
+    mLastFrameTimeNanos = 0;
+    if (mCanBeSeen && mRenderThread == null) mCoverView.setLayerType(LAYER_TYPE_HARDWARE, null);
+    if (isAutoProgress) mAutoClock.setSpeed(1f);
+    publishScene();
+    scheduleFrame();
+    invalidateButton();
+  }
+
+  /**
+   * Stop turning image. From another thread it is applied on main thread.
+   */
+  public void stop() {
+    if (Looper.myLooper() != Looper.getMainLooper()) {
+      update(STATE_STOPPED);
+      return;
+    }
+
+    isRotating = false;
+    mAutoClock.pause();
+    breakFrames();
+    publishScene();
+    mCoverView.setLayerType(LAYER_TYPE_NONE, null);
+    mPlayPauseDrawable.setPlaying(isRotating);
+    invalidateButton();
+  }
+
+  /**
+   * Set velocity. Velocity 1 is 100 degrees per second,
+   * same speed as old 10 ms rotate loop.
+   */
+  public void setVelocity(int velocity) {
+    if (velocity > 0) setRotationSpeed(velocity * DEFAULT_DEGREES_PER_SECOND);
+  }
+
+  /**
+   * Set rotation speed of cover image in degrees per second.
+   */
+  public void setRotationSpeed(float degreesPerSecond) {
+    if (degreesPerSecond > 0) mDegreesPerSecond = degreesPerSecond;
+    publishScene();
+  }
+
+  /**
+   * Get rotation speed of cover image in degrees per second.
+   */
+  public float getRotationSpeed() {
+    return mDegreesPerSecond;
+  }
+
+  /**
+   * set cover image resource. It is decoded at view size on background thread.
+   */
+  public void setCoverDrawable(int coverDrawable) {
+    setCover(CoverSource.fromResource(coverDrawable));
+  }
+
+  /**
+   * sets cover image
+   * @param drawable
+   */
+  public void setCoverDrawable(Drawable drawable) {
+    startCoverSwap();
+    cancelCoverRequest();
+    mCoverSource = null;
+    mCoverUrl = null;
+    setCoverBitmap(drawableToBitmap(drawable), null);
+  }
+
+  /**
+   * sets cover image file. It is decoded at view size on background thread.
+   */
+  public void setCoverFile(String path) {
+    setCover(CoverSource.fromFile(path));
+  }
+
+  /**
+   * sets cover image source. It is decoded at view size on background thread,
+   * so big images never come to memory at full size.
+   */
+  public void setCover(CoverSource source) {
+    startCoverSwap();
+    cancelCoverRequest();
+    mCoverSource = source;
+    mCoverUrl = null;
+    mCoverRequestWidth = 0;
+    if (requestCover()) {
+      createShader();
+      mCoverView.postInvalidate();
+    }
+  }
+
+  /**
+   * gets image URL and load it to cover image. It uses CoverLoader, which is Picasso
+   * by default. Pending load of previous url is cancelled.
+   */
+  public void setCoverURL(String imageUrl) {
+    startCoverSwap();
+    cancelCoverRequest();
+    mCoverSource = null;
+    mCoverUrl = imageUrl;
+    mCoverRequestWidth = 0;
+    if (requestCover()) {
+      createShader();
+      mCoverView.postInvalidate();
+    }
+  }
+
+  /**
+   * Starts measuring time until new cover is drawn.
+   */
+  private void startCoverSwap() {
+    mCoverSwapStartNanos = mStats != null ? System.nanoTime() : 0;
+    mCoverSwapArrived = false;
+  }
+
+  /**
+   * Prepares upcoming covers, like next and previous tracks, so setCover() with them
+   * only swaps shaders. Covers given before are replaced.
+   */
+  public void prefetchCovers(List<CoverSource> sources) {
+    getPrefetcher().setCovers(sources);
+  }
+
+  /**
+   * Prepares upcoming cover urls with cover loader, same as prefetchCovers().
+   */
+  public void prefetchCoverUrls(List<String> urls) {
+    getPrefetcher().setCovers(urls);
+  }
+
+  /**
+   * Sets how many covers are prepared at a time (default = 1). Prefetches run on same
+   * thread as cover decodes, more of them can delay the cover which is set meanwhile.
+   */
+  public void setMaxPrefetchesInFlight(int maxInFlight) {
+    getPrefetcher().setMaxInFlight(maxInFlight);
+  }
+
+  public int getMaxPrefetchesInFlight() {
+    return mPrefetcher != null ? mPrefetcher.getMaxInFlight()
+        : CoverPrefetcher.DEFAULT_MAX_IN_FLIGHT;
+  }
+
+  private CoverPrefetcher getPrefetcher() {
+    if (mPrefetcher == null) {
+      mPrefetcher = new CoverPrefetcher(getContext());
+      updatePrefetchTarget();
+      if (mAttached) mPrefetcher.start();
+    }
+    return mPrefetcher;
+  }
+
+  /**
+   * Covers are prefetched at size and config which this view draws them.
+   */
+  private void updatePrefetchTarget() {
+    if (mPrefetcher == null) return;
+    int smallWidth = mQualityLevel >= QualityPolicy.LEVEL_SMALL_COVER ? mWidth / 2 : 0;
+    mPrefetcher.setTarget(mWidth, smallWidth, mCoverConfig, getCoverLoader());
+  }
+
+  /**
+   * Sets loader for cover urls. Null sets default loader, which loads with Picasso
+   * and shares same url loads between all player views.
+   */
+  public void setCoverLoader(CoverLoader coverLoader) {
+    mCoverLoader = coverLoader;
+    updatePrefetchTarget();
+  }
+
+  private CoverLoader getCoverLoader() {
+    if (mCoverLoader != null) return mCoverLoader;
+    if (sDefaultCoverLoader == null) {
+      sDefaultCoverLoader = new CoalescingCoverLoader(new PicassoCoverLoader());
+    }
+    return sDefaultCoverLoader;
+  }
+
+  /**
+   * Sets bitmap config for decoded covers. Use RGB_565 for opaque covers to use half memory.
+   */
+  public void setCoverConfig(Bitmap.Config config) {
+    if (config == null || config == mCoverConfig) return;
+    mCoverConfig = config;
+    updatePrefetchTarget();
+    if (mCoverSource != null || mCoverUrl != null) {
+      mCoverRequestWidth = 0;
+      if (requestCover()) {
+        createShader();
+        mCoverView.postInvalidate();
+      }
+    }
+  }
+
+  /**
+   * Starts decoding cover source or loading cover url for current width if it is not
+   * requested for it yet. Returns true if cover is found in CoverCache, then shader
+   * must be created by caller.
+   */
+  private boolean requestCover() {
+    String key = mCoverSource != null ? mCoverSource.getKey() : mCoverUrl;
+    if (key == null || mWidth == 0 || mCoverRequestWidth == mWidth) return false;
+
+    cancelCoverRequest();
+    mCoverRequestWidth = mWidth;
+
+    CoverCache.Entry cached = CoverCache.request(CoverCache.key(key, mWidth, mCoverConfig));
+    if (cached != null) {
+      setCoverSource(cached.bitmap, key, cached);
+      requestPalette();
+      return true;
+    }
+
+    mCoverRequestStartNanos = System.nanoTime();
+    if (mCoverSource != null) {
+      mCoverDecodeCallback = new CoverDecodeCallback();
+      mCoverDecode = CoverDecoder.decodeAsync(getContext(), mCoverSource, mWidth, mCoverConfig,
+          mCoverDecodeCallback);
+    } else {
+      //Loader can notify callback before it returns. Then there is nothing to cancel.
+      mCoverLoad = LOAD_STARTING;
+      mCoverLoadCallback = new CoverLoadCallback();
+      CoverLoader.Request load =
+          getCoverLoader().load(getContext(), mCoverUrl, mWidth, mCoverLoadCallback);
+      if (mCoverLoad == LOAD_STARTING) mCoverLoad = load;
+    }
+    return false;
+  }
+
+  /**
+   * Cancels pending cover decode and load.
+   */
+  private void cancelCoverRequest() {
+    mCoverDecodeCallback = null;
+    mCoverLoadCallback = null;
+    if (mCoverDecode != null) {
+      mCoverDecode.cancel(false);
+      mCoverDecode = null;
+    }
+    if (mCoverLoad != null) {
+      CoverLoader.Request load = mCoverLoad;
+      mCoverLoad = null;
+      load.cancel();
+    }
+  }
+
+  /**
+   * Sets decoded cover if it is result of current request. Results of cancelled
+   * requests, for another source or an old width, are given back to pool.
+   */
+  private final class CoverDecodeCallback implements CoverDecoder.Callback {
+    @Override public void onCoverDecoded(CoverSource source, Bitmap bitmap) {
+      if (mCoverDecodeCallback != this) {
+        //Nobody else has seen this bitmap
+        CoverBitmapPool.put(bitmap);
+        return;
+      }
+      mCoverDecodeCallback = null;
+      mCoverDecode = null;
+      recordCoverRequest();
+      setCoverBitmap(bitmap, source.getKey());
+    }
+
+    @Override public void onCoverFailed(CoverSource source, Exception e) {
+      if (mCoverDecodeCallback != this) return;
+      mCoverDecodeCallback = null;
+      mCoverDecode = null;
+    }
+  }
+
+  /**
+   * Sets loaded cover if it is result of current request.
+   */
+  private final class CoverLoadCallback implements CoverLoader.Callback {
+    @Override public void onCoverLoaded(String url, Bitmap bitmap) {
+      if (mCoverLoadCallback != this) return;
+      mCoverLoadCallback = null;
+      mCoverLoad = null;
+      recordCoverRequest();
+      setCoverBitmap(bitmap, url);
+    }
+
+    @Override public void onCoverFailed(String url, Exception e) {
+      if (mCoverLoadCallback != this) return;
+      mCoverLoadCallback = null;
+      mCoverLoad = null;
+    }
+  }
+
+  private void recordCoverRequest() {
+    if (mStats != null) mStats.recordCoverRequest(System.nanoTime() - mCoverRequestStartNanos);
+  }
+
+  /**
+   * Sets cover bitmap and creates shader for it. Key is used for CoverCache, can be null.
+   */
+  private void setCoverBitmap(Bitmap bitmap, String key) {
+    setCoverSource(bitmap, key, null);
+    createShader();
+    mCoverView.postInvalidate();
+    requestPalette();
+  }
+
+  /**
+   * Requests cover again if it was cancelled while detached.
+   */
+  @Override protected void onAttachedToWindow() {
+    super.onAttachedToWindow();
+    mAttached = true;
+    mClock.addOnClockChangeListener(mClockListener);
+    getViewTreeObserver().addOnScrollChangedListener(mScrollListener);
+    getViewTreeObserver().addOnGlobalLayoutListener(mLayoutListener);
+    if (mSpectrum != null) mSpectrum.setOnFrameAvailableListener(mSpectrumListener);
+    if (mRenderThreadEnabled) startRenderThread();
+    if (mPrefetcher != null) mPrefetcher.start();
+    updateCanBeSeen();
+
+    if (requestCover()) {
+      createShader();
+      mCoverView.postInvalidate();
+    }
+  }
+
+  @SuppressWarnings("deprecation")
+  private void removeLayoutListener() {
+    if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
+      getViewTreeObserver().removeOnGlobalLayoutListener(mLayoutListener);
+    } else {
+      getViewTreeObserver().removeGlobalOnLayoutListener(mLayoutListener);
+    }
+  }
+
+  /**
+   * Pending cover decode or load is not needed anymore. Rotation and progress are parked.
+   */
+  @Override protected void onDetachedFromWindow() {
+    mAttached = false;
+    mClock.removeOnClockChangeListener(mClockListener);
+    getViewTreeObserver().removeOnScrollChangedListener(mScrollListener);
+    removeLayoutListener();
+    if (mSpectrum != null) mSpectrum.setOnFrameAvailableListener(null);
+    stopRenderThread();
+    cancelPalette();
+    if (mPrefetcher != null) mPrefetcher.stop();
+    updateCanBeSeen();
+
+    if (mCoverDecode != null || mCoverLoad != null) {
+      cancelCoverRequest();
+      mCoverRequestWidth = 0;
+    }
+    super.onDetachedFromWindow();
+  }
+
+  /**
+   * This is detect when mButtonRegion is clicked. Which means
+   * play/pause action happened.
+   */
+  @Override public boolean onTouchEvent(MotionEvent event) {
+
+    float x = event.getX();
+    float y = event.getY();
+
+    switch (event.getAction()) {
+      case MotionEvent.ACTION_DOWN: {
+        if (isOnArc(x, y)) startSeek(x, y);
+        return true;
+      }
+      case MotionEvent.ACTION_MOVE: {
+        if (mSeeking) {
+          mSeekPositionMs = angleToPosition(x, y);
+          mSeekPending = true;
+          publishScene();
+          scheduleFrame();
+          return true;
+        }
+      }
+      break;
+      case MotionEvent.ACTION_UP: {
+        if (mSeeking) {
+          mSeekPositionMs = angleToPosition(x, y);
+          finishSeek();
+          return true;
+        }
+        if (mButtonRegion.contains((int) x, (int) y)) {
+          if (onClickListener != null) onClickListener.onClick(this);
+        }
+      }
+      break;
+      case MotionEvent.ACTION_CANCEL: {
+        //Cancel event coordinates are not where finger was, last dragged position is final
+        if (mSeeking) {
+          finishSeek();
+          return true;
+        }
+      }
+      break;
+
+      default: break;
+    }
+
+    return super.onTouchEvent(event);
+  }
+
+  /**
+   * True if point is on progress arc stroke, with touch slop around it. Slop reaches at
+   * most half way to cover, so touches on cover edge do not start a seek.
+   */
+  private boolean isOnArc(float x, float y) {
+    if (!mSeekEnabled || !mProgressVisibility || mWidth == 0 || mDurationMs <= 0) return false;
+
+    float distance = (float) Math.hypot(x - mCenterX, y - mCenterY);
+    float arcRadius = rectF.width() / 2f;
+    float slop = Math.min(SEEK_TOUCH_SLOP_DP * getResources().getDisplayMetrics().density,
+        (arcRadius - mCoverRadius) / 2f);
+    if (Math.abs(distance - arcRadius) > slop) return false;
+
+    //Gap under the arc is not touchable, except a few degrees at its ends
+    float sweep = calculateSweepDegree(x, y);
+    return sweep <= 250f + 10f || sweep >= 360f - 10f;
+  }
+
+  /**
+   * Angle of point from start of arc (145 degrees) clockwise, between 0 and 360.
+   */
+  private float calculateSweepDegree(float x, float y) {
+    float angle = (float) Math.toDegrees(Math.atan2(y - mCenterY, x - mCenterX));
+    float sweep = angle - 145f;
+    while (sweep < 0) sweep += 360f;
+    return sweep % 360f;
+  }
+
+  /**
+   * Maps point to position on arc. Points in the gap under arc go to nearest end.
+   */
+  private long angleToPosition(float x, float y) {
+    float sweep = calculateSweepDegree(x, y);
+    if (sweep > 250f) sweep = sweep < 250f + (360f - 250f) / 2f ? 250f : 0f;
+    return (long) (mDurationMs * (sweep / 250f));
+  }
+
+  private void startSeek(float x, float y) {
+    mSeeking = true;
+    mSeekPositionMs = angleToPosition(x, y);
+    mSeekPending = false;
+    mLastSeekDispatchMs = SystemClock.uptimeMillis();
+
+    //Scrolling parents must not steal the drag
+    if (getParent() != null) getParent().requestDisallowInterceptTouchEvent(true);
+    if (mOnSeekListener != null) mOnSeekListener.onSeekStarted(mSeekPositionMs);
+    publishScene();
+    scheduleFrame();
+  }
+
+  /**
+   * Sends newest drag position if enough time passed since last one.
+   * Final position is always sent.
+   */
+  private void dispatchSeek(boolean finished) {
+    if (finished) {
+      mSeekPending = false;
+      if (mOnSeekListener != null) mOnSeekListener.onSeekFinished(mSeekPositionMs);
+      return;
+    }
+
+    long now = SystemClock.uptimeMillis();
+    if (!mSeekPending || now - mLastSeekDispatchMs < SEEK_DISPATCH_INTERVAL_MS) return;
+    mSeekPending = false;
+    mLastSeekDispatchMs = now;
+    if (mOnSeekListener != null) mOnSeekListener.onSeek(mSeekPositionMs);
+  }
+
+  /**
+   * Moves clock to final position, so progress does not jump back before player
+   * seeks, then sends final position. Position is mSeekPositionMs.
+   */
+  private void finishSeek() {
+    mSeeking = false;
+    mClock.setPositionMs(mSeekPositionMs);
+    publishScene();
+    dispatchSeek(true);
+    updateProgress();
+  }
+
+  /**
+   * Sets listener for seeking by dragging on progress arc.
+   */
+  public void setOnSeekListener(OnSeekListener listener) {
+    mOnSeekListener = listener;
+  }
+
+  /**
+   * Enables or disables seeking by dragging on progress arc. It is enabled by default.
+   */
+  public void setSeekEnabled(boolean enabled) {
+    mSeekEnabled = enabled;
+  }
+
+  public boolean isSeekEnabled() {
+    return mSeekEnabled;
+  }
 
-    Bitmap bitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
-    Canvas canvas = new Canvas(bitmap);
-    drawable.setBounds(0, 0, canvas.getWidth(), canvas.getHeight());
-    drawable.draw(canvas);
+  /**
+   * True while user drags on progress arc.
+   */
+  public boolean isSeeking() {
+    return mSeeking;
+  }
 
-    return bitmap;
+  /**
+   * onClickListener.onClick will be called when button clicked.
+   * We dont want all view click. We only want button area click.
+   * That is why we override it.
+   */
+  @Override public void setOnClickListener(OnClickListener l) {
+    onClickListener = l;
   }
 
   /**
-   * Create shader and set shader to mPaintCover
+   * Resize bitmap with @newHeight and @newWidth parameters
    */
-  private void createShader() {
+  private Bitmap getResizedBitmap(Bitmap bm, float newHeight, float newWidth) {
+    int width = bm.getWidth();
+    int height = bm.getHeight();
+    float scaleWidth = ((float) newWidth) / width;
+    float scaleHeight = ((float) newHeight) / height;
+    Matrix matrix = new Matrix();
+    matrix.postScale(scaleWidth, scaleHeight);
+    Bitmap resizedBitmap = Bitmap.createBitmap(bm, 0, 0, width, height, matrix, false);
+    return resizedBitmap;
+  }
 
-    if (mWidth == 0) return;
+  /**
+   * Gets shared style for current colors. Paints of style are never changed.
+   */
+  private void updateStyle() {
+    mStyle = PlayerStyle.obtain(mButtonColor, mProgressEmptyColor, mProgressLoadedColor,
+        mTextColor, mTextSize, mQualityLevel < QualityPolicy.LEVEL_NO_ANTI_ALIAS);
+    mStaticLayerDirty = true;
+    publishScene();
+  }
 
-    //if mBitmapCover is null then create default colored cover
-    if (mBitmapCover == null) {
-      mBitmapCover = Bitmap.createBitmap(mWidth, mHeight, Bitmap.Config.ARGB_8888);
-      mBitmapCover.eraseColor(mCoverColor);
-    }
+  /**
+   * Sets button color
+   */
+  public void setButtonColor(int color) {
+    cancelPaletteCrossfade();
+    mButtonColor = color;
+    updateStyle();
+    invalidateButton();
+  }
 
-    mCoverScale = ((float) mWidth) / (float) mBitmapCover.getWidth();
+  /**
+   * sets progress empty color
+   */
+  public void setProgressEmptyColor(int color) {
+    cancelPaletteCrossfade();
+    mProgressEmptyColor = color;
+    updateStyle();
+    invalidateArc();
+  }
 
-    mBitmapCover =
-        Bitmap.createScaledBitmap(mBitmapCover, (int) (mBitmapCover.getWidth() * mCoverScale),
-            (int) (mBitmapCover.getHeight() * mCoverScale), true);
+  /**
+   * sets progress loaded color
+   */
+  public void setProgressLoadedColor(int color) {
+    cancelPaletteCrossfade();
+    mProgressLoadedColor = color;
+    updateStyle();
+    invalidateArc();
+  }
 
-    mShader = new BitmapShader(mBitmapCover, Shader.TileMode.CLAMP, Shader.TileMode.CLAMP);
-    mPaintCover = new Paint();
-    mPaintCover.setAntiAlias(true);
-    mPaintCover.setShader(mShader);
+  /**
+   * Sets spectrum ring color. Default is progressLoadedColor attribute.
+   */
+  public void setSpectrumColor(int color) {
+    mSpectrumPaint.setColor(color);
+    invalidateSpectrum();
   }
 
   /**
-   * Update rotate degree of cover and invalide onDraw();
+   * Sets total seconds of music
    */
-  public void updateCoverRotate() {
-    mRotateDegrees += VELOCITY;
-    mRotateDegrees = mRotateDegrees % 360;
-    postInvalidate();
+  public void setMax(int maxProgress) {
+    setDurationMs(maxProgress * 1000L);
   }
 
   /**
-   * Checks is rotating
+   * Sets duration of music in milliseconds
    */
-  public boolean isRotating() {
-    return isRotating;
+  public void setDurationMs(long durationMs) {
+    mClock.setDurationMs(durationMs);
   }
 
   /**
-   * Start turning image
+   * Get duration of music in milliseconds
    */
-  public void start() {
+  public long getDurationMs() {
+    return mClock.getDurationMs();
+  }
 
-    isRotating = true;
-    mPlayPauseDrawable.setPlaying(isRotating);
-    mHandlerRotate.removeCallbacksAndMessages(null);
-    mHandlerRotate.postDelayed(mRunnableRotate, ROTATE_DELAY);
-    if (isAutoProgress) {
-      mHandlerProgress.removeCallbacksAndMessages(null);
-      mHandlerProgress.postDelayed(mRunnableProgress, PROGRESS_SECOND_MS);
+  /**
+   * Sets current seconds of music
+   */
+  public void setProgress(int currentProgress) {
+    setPositionMs(currentProgress * 1000L);
+  }
+
+  /**
+   * Sets current position of music in milliseconds
+   */
+  public void setPositionMs(long positionMs) {
+    if (0 <= positionMs && positionMs <= mClock.getDurationMs()) {
+      mClock.setPositionMs(positionMs);
     }
-    postInvalidate();
   }
 
   /**
-   * Stop turning image
+   * Get current progress seconds
    */
-  public void stop() {
-    isRotating = false;
-    mPlayPauseDrawable.setPlaying(isRotating);
-    postInvalidate();
+  public int getProgress() {
+    return (int) (getPositionMs() / 1000);
   }
 
   /**
-   * Set velocity.When updateCoverRotate() method called,
-   * increase degree by velocity value.
+   * Get current position of music in milliseconds
    */
-  public void setVelocity(int velocity) {
-    if (velocity > 0) VELOCITY = velocity;
+  public long getPositionMs() {
+    return mClock.getPositionMs();
   }
 
   /**
-   * set cover image resource
+   * Sets clock which progress and time are read from on every frame. Use it to follow
+   * your player exactly, also at 1.5x or 2x speed. Null sets auto progress clock back.
    */
-  public void setCoverDrawable(int coverDrawable) {
-    Drawable drawable = getContext().getResources().getDrawable(coverDrawable);
-    mBitmapCover = drawableToBitmap(drawable);
-    createShader();
-    postInvalidate();
+  public void setPlaybackClock(PlaybackClock clock) {
+    PlaybackClock newClock = clock != null ? clock : mAutoClock;
+    if (newClock == mClock) return;
+
+    if (mAttached) mClock.removeOnClockChangeListener(mClockListener);
+    mClock = newClock;
+    if (mAttached) mClock.addOnClockChangeListener(mClockListener);
+    publishScene();
+    scheduleFrame();
   }
 
   /**
-   * sets cover image
-   * @param drawable
+   * Draws player on its own thread into a TextureView. Window must be hardware
+   * accelerated. Spectrum ring and static layer are not used in this mode.
+   */
+  public void setRenderThreadEnabled(boolean enabled) {
+    if (enabled == mRenderThreadEnabled) return;
+    mRenderThreadEnabled = enabled;
+
+    if (enabled) {
+      mRenderView = new TextureView(getContext());
+      mRenderView.setOpaque(false);
+      addView(mRenderView);
+      mCoverView.setVisibility(INVISIBLE);
+      if (mAttached) startRenderThread();
+    } else {
+      stopRenderThread();
+      removeView(mRenderView);
+      mRenderView = null;
+      mCoverView.setRotation(mRotateDegrees);
+      mCoverView.setVisibility(VISIBLE);
+    }
+    requestLayout();
+    invalidateAll();
+  }
+
+  public boolean isRenderThreadEnabled() {
+    return mRenderThreadEnabled;
+  }
+
+  private void startRenderThread() {
+    if (mRenderThread != null || mRenderView == null) return;
+    mRenderThread = new PlayerRenderThread(mRenderView, mRotateDegrees);
+    mRenderThread.startRendering();
+    mRenderThread.setPaused(!mCanBeSeen);
+    publishScene();
+  }
+
+  /**
+   * Stops render thread. Cover continues from its rotation. Thread may finish its
+   * frame after this, so it is kept until it has finished.
    */
-  public void setCoverDrawable(Drawable drawable) {
-    mBitmapCover = drawableToBitmap(drawable);
-    createShader();
-    postInvalidate();
+  private void stopRenderThread() {
+    if (mRenderThread == null) return;
+    mRotateDegrees = mRenderThread.getRotateDegrees();
+    mRenderThread.stopRendering();
+    mStoppingRenderThreads.add(mRenderThread);
+    mRenderThread = null;
+  }
+
+  /**
+   * Publishes what render thread draws. Called when anything but progress changes,
+   * progress is read from clock by render thread.
+   */
+  private void publishScene() {
+    if (mRenderThread == null || mWidth == 0 || mStyle == null) return;
+
+    PlayerRenderThread.Scene scene = mRenderThread.obtainScene();
+    scene.centerX = mCenterX;
+    scene.centerY = mCenterY;
+    scene.coverRadius = mCoverRadius;
+    scene.coverPaint = mPaintCover;
+    scene.buttonRadius = mButtonRadius;
+    scene.arcRect.set(rectF);
+    scene.leftTimeX = mLeftTimeX;
+    scene.passedTimeX = mPassedTimeX;
+    scene.timeY = mTimeY;
+    scene.style = mStyle;
+    scene.progressVisible = mProgressVisibility;
+    scene.rotating = isRotating;
+    scene.degreesPerSecond = mDegreesPerSecond;
+    scene.clock = mClock;
+    scene.seeking = mSeeking;
+    scene.seekPositionMs = mSeekPositionMs;
+    scene.playPauseDrawable = mPlayPauseDrawable;
+    mRenderThread.setScene(scene);
   }
 
   /**
-   * gets image URL and load it to cover image.It uses Picasso Library.
+   * Publishes state from any thread. Fields which are set in state are applied
+   * together on main thread, with one redraw however many fields are changed.
+   * States published before main thread applies them are merged, newer fields win.
    */
-  public void setCoverURL(String imageUrl) {
-    Picasso.with(getContext()).load(imageUrl).into(target);
+  public void update(PlayerState state) {
+    //Only first state of a batch posts, others are applied with it
+    if (mPendingState.offer(state)) sMainHandler.post(mApplyStateRunnable);
   }
 
   /**
-   * When picasso load into target. Overrider methods are called.
-   * Invalidate view onBitmapLoaded.
+   * Applies fields of state on main thread. Setters are not used, so style is
+   * obtained only once, and invalidates are collected into one.
    */
-  private Target target = new Target() {
-    @Override public void onBitmapLoaded(Bitmap bitmap, Picasso.LoadedFrom from) {
-      mBitmapCover = bitmap;
-      createShader();
-      postInvalidate();
+  private void applyState(PlayerState state) {
+    if (state == null) return;
+    if (mStats != null) mStats.recordStateApply();
+    mApplyingState = true;
+
+    if (state.hasDurationMs()) mClock.setDurationMs(state.getDurationMs());
+    if (state.hasPositionMs()) mClock.setPositionMs(state.getPositionMs());
+    if (state.hasPlaying() && state.isPlaying() != isRotating) {
+      if (state.isPlaying()) {
+        start();
+      } else {
+        stop();
+      }
     }
 
-    @Override public void onBitmapFailed(Drawable errorDrawable) {
+    boolean styleChanged = false;
+    if (state.hasButtonColor() || state.hasProgressEmptyColor()
+        || state.hasProgressLoadedColor() || state.hasTimeColor()) {
+      cancelPaletteCrossfade();
+    }
+    if (state.hasButtonColor()) {
+      mButtonColor = state.getButtonColor();
+      styleChanged = true;
+    }
+    if (state.hasProgressEmptyColor()) {
+      mProgressEmptyColor = state.getProgressEmptyColor();
+      styleChanged = true;
+    }
+    if (state.hasProgressLoadedColor()) {
+      mProgressLoadedColor = state.getProgressLoadedColor();
+      styleChanged = true;
+    }
+    if (state.hasTimeColor()) {
+      mTextColor = state.getTimeColor();
+      styleChanged = true;
+    }
+    if (state.hasProgressVisibility()) {
+      mProgressVisibility = state.isProgressVisible();
+      mStaticLayerDirty = true;
+      styleChanged = true;
+    }
 
+    if (styleChanged) {
+      updateStyle();
+      invalidateAll();
+    }
+    updateProgress();
+
+    mApplyingState = false;
+    if (mStateDirtyAll) {
+      invalidateAll();
+    } else if (!mRectStateDirty.isEmpty()) {
+      mRectDirty.set(mRectStateDirty);
+      invalidateDirty();
     }
+    mStateDirtyAll = false;
+    mRectStateDirty.setEmpty();
+  }
 
-    @Override public void onPrepareLoad(Drawable placeHolderDrawable) {
+  /**
+   * Get clock which progress is read from
+   */
+  public PlaybackClock getPlaybackClock() {
+    return mClock;
+  }
 
+  /**
+   * Draws newest frame of buffer as bars around cover. Buffer must be set to one view
+   * only. Null disables it.
+   */
+  public void setSpectrumBuffer(SpectrumBuffer buffer) {
+    if (buffer == mSpectrum) return;
+
+    if (mSpectrum != null && mAttached) mSpectrum.setOnFrameAvailableListener(null);
+    mSpectrum = buffer;
+    mSpectrumBarCount = 0;
+    if (buffer != null) {
+      int bars = Math.min(MAX_SPECTRUM_BARS, buffer.getBinCount());
+      mSpectrumFrame = new float[buffer.getBinCount()];
+      mSpectrumLines = new float[bars * 4];
+      mSpectrumCos = new float[bars];
+      mSpectrumSin = new float[bars];
+      for (int i = 0; i < bars; i++) {
+        //First bar is on top, bars go clockwise
+        double angle = 2 * Math.PI * i / bars - Math.PI / 2;
+        mSpectrumCos[i] = (float) Math.cos(angle);
+        mSpectrumSin[i] = (float) Math.sin(angle);
+      }
+      mSpectrumBarCount = bars;
+      updateSpectrumGeometry();
+      if (mAttached) buffer.setOnFrameAvailableListener(mSpectrumListener);
+    } else {
+      mSpectrumFrame = null;
+      mSpectrumLines = null;
+      mSpectrumCos = null;
+      mSpectrumSin = null;
     }
-  };
+    invalidateAll();
+    scheduleFrame();
+  }
+
+  public SpectrumBuffer getSpectrumBuffer() {
+    return mSpectrum;
+  }
 
   /**
-   * This is detect when mButtonRegion is clicked. Which means
-   * play/pause action happened.
+   * Calculates ring radiuses and bar width for view size. Bars are laid out with zero
+   * height until first frame is read.
    */
-  @Override public boolean onTouchEvent(MotionEvent event) {
+  private void updateSpectrumGeometry() {
+    if (mSpectrum == null || mWidth == 0) return;
 
-    float x = event.getX();
-    float y = event.getY();
+    mSpectrumInnerRadius = mCoverRadius + 4f;
+    mSpectrumOuterRadius = mWidth / 2f - 20f - PlayerStyle.PROGRESS_STROKE_WIDTH / 2f - 4f;
+    float barSpacing = (float) (2 * Math.PI * mSpectrumInnerRadius / mSpectrumBarCount);
+    mSpectrumPaint.setStrokeWidth(Math.max(1f, Math.min(8f, barSpacing * 0.6f)));
 
-    switch (event.getAction()) {
-      case MotionEvent.ACTION_DOWN: {
-        return true;
-      }
-      case MotionEvent.ACTION_UP: {
-        if (mButtonRegion.contains((int) x, (int) y)) {
-          if (onClickListener != null) onClickListener.onClick(this);
-        }
-      }
-      break;
+    for (int i = 0; i < mSpectrumBarCount; i++) {
+      setSpectrumBar(i, 0f);
+    }
+  }
 
-      default: break;
+  /**
+   * Reads newest spectrum frame and lays out bars for it. Returns false if there
+   * was no new frame.
+   */
+  private boolean updateSpectrum() {
+    if (!mSpectrum.readLatest(mSpectrumFrame)) return false;
+
+    //Each bar shows loudest bin of its group
+    int bins = mSpectrumFrame.length;
+    for (int i = 0; i < mSpectrumBarCount; i++) {
+      int from = i * bins / mSpectrumBarCount;
+      int to = Math.max(from + 1, (i + 1) * bins / mSpectrumBarCount);
+      float value = 0;
+      for (int k = from; k < to; k++) {
+        value = Math.max(value, mSpectrumFrame[k]);
+      }
+      setSpectrumBar(i, Math.max(0f, Math.min(1f, value)));
     }
+    invalidateSpectrum();
+    return true;
+  }
 
-    return super.onTouchEvent(event);
+  private void setSpectrumBar(int bar, float value) {
+    float length = (mSpectrumOuterRadius - mSpectrumInnerRadius) * value;
+    float start = mSpectrumInnerRadius;
+    float end = start + Math.max(1f, length);
+    int index = bar * 4;
+    mSpectrumLines[index] = mCenterX + mSpectrumCos[bar] * start;
+    mSpectrumLines[index + 1] = mCenterY + mSpectrumSin[bar] * start;
+    mSpectrumLines[index + 2] = mCenterX + mSpectrumCos[bar] * end;
+    mSpectrumLines[index + 3] = mCenterY + mSpectrumSin[bar] * end;
   }
 
   /**
-   * onClickListener.onClick will be called when button clicked.
-   * We dont want all view click. We only want button area click.
-   * That is why we override it.
+   * Invalidates square around spectrum ring.
    */
-  @Override public void setOnClickListener(OnClickListener l) {
-    onClickListener = l;
+  private void invalidateSpectrum() {
+    if (mSpectrum == null || mWidth == 0) return;
+    float radius = mSpectrumOuterRadius + mSpectrumPaint.getStrokeWidth();
+    mRectDirty.setEmpty();
+    mRectDirtyPart.set(mCenterX - radius, mCenterY - radius, mCenterX + radius,
+        mCenterY + radius);
+    unionDirty(mRectDirtyPart);
+    invalidateDirty();
   }
 
   /**
-   * Resize bitmap with @newHeight and @newWidth parameters
+   * Starts measuring draw, invalidate, frame and cover costs into stats.
+   * Null stops measuring. Same stats can be set to more views to sum them.
    */
-  private Bitmap getResizedBitmap(Bitmap bm, float newHeight, float newWidth) {
-    int width = bm.getWidth();
-    int height = bm.getHeight();
-    float scaleWidth = ((float) newWidth) / width;
-    float scaleHeight = ((float) newHeight) / height;
-    Matrix matrix = new Matrix();
-    matrix.postScale(scaleWidth, scaleHeight);
-    Bitmap resizedBitmap = Bitmap.createBitmap(bm, 0, 0, width, height, matrix, false);
-    return resizedBitmap;
+  public void setStats(PlayerViewStats stats) {
+    mStats = stats;
+    if (stats == null) return;
+
+    updateFrameInterval();
+    stats.setFrameIntervalNanos(mFrameIntervalNanos);
+    stats.setCoverBytes(calculateCoverBytes());
   }
 
   /**
-   * Sets button color
+   * Reads frame interval of display.
    */
-  public void setButtonColor(int color) {
-    mButtonColor = color;
-    mPaintButton.setColor(mButtonColor);
-    postInvalidate();
+  private void updateFrameInterval() {
+    WindowManager windowManager =
+        (WindowManager) getContext().getSystemService(Context.WINDOW_SERVICE);
+    float refreshRate = windowManager.getDefaultDisplay().getRefreshRate();
+    if (refreshRate > 0) mFrameIntervalNanos = (long) (1000000000L / refreshRate);
   }
 
   /**
-   * sets progress empty color
+   * Enables adaptive quality, which lowers quality when frames are late. Null disables
+   * it and restores full quality.
    */
-  public void setProgressEmptyColor(int color) {
-    mProgressEmptyColor = color;
-    mPaintProgressEmpty.setColor(mProgressEmptyColor);
-    postInvalidate();
+  public void setQualityPolicy(QualityPolicy policy) {
+    mQuality = policy != null ? new QualityController(policy) : null;
+    if (policy != null) updateFrameInterval();
+    applyQualityLevel(QualityPolicy.LEVEL_FULL);
+  }
+
+  public QualityPolicy getQualityPolicy() {
+    return mQuality != null ? mQuality.getPolicy() : null;
   }
 
   /**
-   * sets progress loaded color
+   * Current quality level, one of QualityPolicy levels.
    */
-  public void setProgressLoadedColor(int color) {
-    mProgressLoadedColor = color;
-    mPaintProgressLoaded.setColor(mProgressLoadedColor);
-    postInvalidate();
+  public int getQualityLevel() {
+    return mQualityLevel;
   }
 
   /**
-   * Sets total seconds of music
+   * Applies paints and cover for level, and notifies policy listener.
    */
-  public void setMax(int maxProgress) {
-    this.maxProgress = maxProgress;
-    postInvalidate();
+  private void applyQualityLevel(int level) {
+    if (level == mQualityLevel) return;
+
+    boolean antiAliasChanged = (level < QualityPolicy.LEVEL_NO_ANTI_ALIAS)
+        != (mQualityLevel < QualityPolicy.LEVEL_NO_ANTI_ALIAS);
+    boolean coverChanged = (level >= QualityPolicy.LEVEL_SMALL_COVER)
+        != (mQualityLevel >= QualityPolicy.LEVEL_SMALL_COVER);
+    mQualityLevel = level;
+
+    if (antiAliasChanged) updateStyle();
+    if (antiAliasChanged || coverChanged) {
+      createShader();
+      mCoverView.postInvalidate();
+    }
+    if (coverChanged) updatePrefetchTarget();
+    mPainter.resetTimeTexts();
+    invalidateAll();
+
+    if (mQuality != null && mQuality.getPolicy().getOnQualityChangeListener() != null) {
+      mQuality.getPolicy().getOnQualityChangeListener().onQualityChanged(level);
+    }
   }
 
   /**
-   * Sets current seconds of music
+   * Themes button, loaded progress and time colors from each loaded cover. Colors are
+   * extracted on a background thread from a tiny copy of cover, cached by cover key,
+   * and crossfaded in. Covers set as bitmap or drawable are extracted but not cached.
    */
-  public void setProgress(int currentProgress) {
-    if (0 <= currentProgress && currentProgress <= maxProgress) {
-      this.currentProgress = currentProgress;
-      postInvalidate();
+  public void setPaletteThemeEnabled(boolean enabled) {
+    if (enabled == mPaletteThemeEnabled) return;
+    mPaletteThemeEnabled = enabled;
+    if (enabled) {
+      requestPalette();
+    } else {
+      cancelPalette();
     }
   }
 
+  public boolean isPaletteThemeEnabled() {
+    return mPaletteThemeEnabled;
+  }
+
   /**
-   * Get current progress seconds
+   * Palette of current cover, null if it is not extracted yet or theming is disabled.
    */
-  public int getProgress() {
-    return currentProgress;
+  public CoverPalette getCoverPalette() {
+    return mPalette;
+  }
+
+  /**
+   * Gets palette of current cover from cache, or starts extracting it.
+   */
+  private void requestPalette() {
+    if (!mPaletteThemeEnabled || mCoverIsDefault || mBitmapCoverSource == null) return;
+    cancelPalette();
+
+    CoverPalette cached = mCoverKey != null ? CoverPalette.getCached(mCoverKey) : null;
+    if (cached != null) {
+      applyPalette(cached);
+    } else {
+      mPaletteRequest =
+          CoverPalette.extractAsync(mBitmapCoverSource, mCoverKey, mPaletteCallback);
+    }
+  }
+
+  private void cancelPalette() {
+    if (mPaletteRequest != null) {
+      mPaletteRequest.cancel(false);
+      mPaletteRequest = null;
+    }
+  }
+
+  /**
+   * Crossfades button, loaded progress and time colors to palette. A private style is
+   * used during crossfade, at the end shared style of final colors is used.
+   */
+  private void applyPalette(CoverPalette palette) {
+    mPalette = palette;
+    int buttonColor = palette.getDominantColor();
+    int vibrantColor = palette.getVibrantColor();
+
+    //Same colors as now, or as crossfade is going to, need no new crossfade
+    boolean crossfading = mPaletteAnimator != null && mPaletteAnimator.isRunning();
+    if (crossfading ? buttonColor == mPaletteToColors[0] && vibrantColor == mPaletteToColors[1]
+        && vibrantColor == mPaletteToColors[2]
+        : buttonColor == mButtonColor && vibrantColor == mProgressLoadedColor
+            && vibrantColor == mTextColor) {
+      return;
+    }
+
+    mPaletteFromColors[0] = mButtonColor;
+    mPaletteFromColors[1] = mProgressLoadedColor;
+    mPaletteFromColors[2] = mTextColor;
+    mPaletteToColors[0] = buttonColor;
+    mPaletteToColors[1] = vibrantColor;
+    mPaletteToColors[2] = vibrantColor;
+
+    if (mPaletteAnimator == null) {
+      mPaletteAnimator = ValueAnimator.ofFloat(0f, 1f);
+      mPaletteAnimator.setDuration(PALETTE_CROSSFADE_DURATION);
+      mPaletteAnimator.addUpdateListener(new ValueAnimator.AnimatorUpdateListener() {
+        @Override public void onAnimationUpdate(ValueAnimator animation) {
+          updatePaletteColors(animation.getAnimatedFraction());
+        }
+      });
+    }
+    mPaletteAnimator.cancel();
+    //Render thread may draw one style of a running crossfade, then other one is kept
+    PlayerStyle style = obtainPaletteStyle();
+    if (style != null) mPaletteStyle = style;
+    mStyle = mPaletteStyle;
+    publishScene();
+    mPaletteAnimator.start();
+  }
+
+  /**
+   * Sets all three colors at once for crossfade fraction, then invalidates once.
+   */
+  private void updatePaletteColors(float fraction) {
+    mButtonColor = blendColor(mPaletteFromColors[0], mPaletteToColors[0], fraction);
+    mProgressLoadedColor = blendColor(mPaletteFromColors[1], mPaletteToColors[1], fraction);
+    mTextColor = blendColor(mPaletteFromColors[2], mPaletteToColors[2], fraction);
+
+    if (fraction >= 1f || mPaletteStyle == null) {
+      //Crossfade is finished, use shared style
+      mPaletteStyle = null;
+      updateStyle();
+    } else if (mRenderThread != null) {
+      //Published style is read by render thread, so every step publishes the other one
+      PlayerStyle style = obtainPaletteStyle();
+      //Render thread still draws the other one, next step catches up
+      if (style == null) return;
+      mPaletteStyle = style;
+      mStyle = mPaletteStyle;
+      publishScene();
+    } else {
+      mPaletteStyle.setColors(mButtonColor, mProgressLoadedColor, mTextColor);
+      mStaticLayerDirty = true;
+    }
+    invalidateAll();
+  }
+
+  /**
+   * Returns palette style of current colors which is neither used now nor drawn by
+   * render thread, or null if there is none.
+   */
+  private PlayerStyle obtainPaletteStyle() {
+    boolean antiAlias = mQualityLevel < QualityPolicy.LEVEL_NO_ANTI_ALIAS;
+    for (int i = 0; i < mPaletteStyles.length; i++) {
+      PlayerStyle style = mPaletteStyles[i];
+      if (style != null && (style == mStyle
+          || mRenderThread != null && mRenderThread.isDrawing(style))) {
+        continue;
+      }
+      if (style == null || style.progressEmptyColor != mProgressEmptyColor
+          || style.textSize != mTextSize || style.antiAlias != antiAlias) {
+        style = PlayerStyle.createUncached(mButtonColor, mProgressEmptyColor,
+            mProgressLoadedColor, mTextColor, mTextSize, antiAlias);
+        mPaletteStyles[i] = style;
+      } else {
+        style.setColors(mButtonColor, mProgressLoadedColor, mTextColor);
+      }
+      return style;
+    }
+    return null;
+  }
+
+  /**
+   * Ends crossfade at its final colors, so it does not overwrite colors set by app.
+   * Caller updates style.
+   */
+  private void cancelPaletteCrossfade() {
+    if (mPaletteStyle == null) return;
+    mPaletteAnimator.cancel();
+    mPaletteStyle = null;
+    mButtonColor = mPaletteToColors[0];
+    mProgressLoadedColor = mPaletteToColors[1];
+    mTextColor = mPaletteToColors[2];
+  }
+
+  /**
+   * Linear blend of two ARGB colors.
+   */
+  private static int blendColor(int from, int to, float fraction) {
+    int a = (int) (Color.alpha(from) + (Color.alpha(to) - Color.alpha(from)) * fraction);
+    int r = (int) (Color.red(from) + (Color.red(to) - Color.red(from)) * fraction);
+    int g = (int) (Color.green(from) + (Color.green(to) - Color.green(from)) * fraction);
+    int b = (int) (Color.blue(from) + (Color.blue(to) - Color.blue(from)) * fraction);
+    return Color.argb(a, r, g, b);
+  }
+
+  /**
+   * Get stats which are measured, null if measuring is disabled
+   */
+  public PlayerViewStats getStats() {
+    return mStats;
+  }
+
+  /**
+   * Style which view draws with now. Views with same theme share it.
+   */
+  PlayerStyle getStyle() {
+    return mStyle;
+  }
+
+  /**
+   * Touch region of play/pause button. Every view has its own.
+   */
+  Region getButtonRegion() {
+    return mButtonRegion;
+  }
+
+  PlayPauseDrawable getPlayPauseDrawable() {
+    return mPlayPauseDrawable;
+  }
+
+  /**
+   * Bounds of progress arc. Every view has its own.
+   */
+  RectF getArcRect() {
+    return rectF;
   }
 
   /**
    * Calculate left seconds
    */
   private int calculateLeftSeconds() {
-    return maxProgress - currentProgress;
+    return ControlsPainter.calculateLeftSeconds(mPositionMs, mDurationMs);
   }
 
   /**
    * Return passed seconds
    */
   private int calculatePassedSeconds() {
-    return currentProgress;
+    return ControlsPainter.calculatePassedSeconds(mPositionMs);
   }
 
   /**
-   * Convert seconds to time
+   * Convert seconds to time and write it as "mm:ss", or "h:mm:ss" for an hour
+   * or longer, into chars. Returns written char count. Nothing is allocated.
    */
-  private String secondsToTime(int seconds) {
-    String time = "";
-
-    String minutesText = String.valueOf(seconds / 60);
-    if (minutesText.length() == 1) minutesText = "0" + minutesText;
+  static int secondsToTime(int seconds, char[] chars) {
+    int time = Math.max(0, seconds);
+    int hours = time / 3600;
+    int minutes = (time / 60) % 60;
+    int secs = time % 60;
 
-    String secondsText = String.valueOf(seconds % 60);
-    if (secondsText.length() == 1) secondsText = "0" + secondsText;
+    int length = 0;
+    if (hours > 0) {
+      int hourDigits = 1;
+      for (int h = hours / 10; h > 0; h /= 10) {
+        hourDigits++;
+      }
+      for (int i = hourDigits - 1; i >= 0; i--) {
+        chars[i] = (char) ('0' + hours % 10);
+        hours /= 10;
+      }
+      chars[hourDigits] = ':';
+      length = hourDigits + 1;
+    }
 
-    time = minutesText + ":" + secondsText;
+    chars[length] = (char) ('0' + minutes / 10);
+    chars[length + 1] = (char) ('0' + minutes % 10);
+    chars[length + 2] = ':';
+    chars[length + 3] = (char) ('0' + secs / 10);
+    chars[length + 4] = (char) ('0' + secs % 10);
 
-    return time;
+    return length + 5;
   }
 
   /**
    * Calculate passed progress degree
    */
-  private int calculatePastProgressDegree() {
-    return (250 * currentProgress) / maxProgress;
+  private float calculatePastProgressDegree() {
+    return calculatePastProgressDegree(mPositionMs, mDurationMs);
+  }
+
+  /**
+   * Calculate passed progress degree on 250 degrees arc. Has no view state,
+   * so it can be measured without Android as secondsToTime.
+   */
+  static float calculatePastProgressDegree(long positionMs, long durationMs) {
+    if (durationMs <= 0) return 0;
+    return Math.min(250f, 250f * positionMs / durationMs);
   }
 
   /**
    * If you do not want to automatic progress, you can disable it
-   * and implement your own handler by using setProgress method repeatedly.
+   * and implement your own handler by using setProgress method repeatedly,
+   * or set your own PlaybackClock.
    */
   public void setAutoProgress(boolean isAutoProgress) {
     this.isAutoProgress = isAutoProgress;
+    mAutoClock.setSpeed(isAutoProgress && isRotating ? 1f : 0f);
   }
 
   /**
    * Sets time text color
    */
   public void setTimeColor(int color) {
+    cancelPaletteCrossfade();
     mTextColor = color;
-    mPaintTime.setColor(mTextColor);
-    postInvalidate();
+    updateStyle();
+    invalidateTimeText();
   }
 
   public void setProgressVisibility(boolean mProgressVisibility) {
     this.mProgressVisibility = mProgressVisibility;
-    postInvalidate();
+    mStaticLayerDirty = true;
+    publishScene();
+    invalidateAll();
   }
 
   /**
@@ -754,7 +2847,7 @@ public class MusicPlayerView extends View implements OnPlayPauseToggleListener {
    */
   Drawable.Callback callback = new Drawable.Callback() {
     @Override public void invalidateDrawable(Drawable who) {
-      postInvalidate();
+      invalidateButton();
     }
 
     @Override public void scheduleDrawable(Drawable who, Runnable what, long when) {
@@ -777,15 +2870,6 @@ public class MusicPlayerView extends View implements OnPlayPauseToggleListener {
    * Animate play/pause image
    */
   public void toggle() {
-    if (mAnimatorSet != null) {
-      mAnimatorSet.cancel();
-    }
-
-    mAnimatorSet = new AnimatorSet();
-    final Animator pausePlayAnim = mPlayPauseDrawable.getPausePlayAnimator();
-    mAnimatorSet.setInterpolator(new DecelerateInterpolator());
-    mAnimatorSet.setDuration(PLAY_PAUSE_ANIMATION_DURATION);
-    mAnimatorSet.playTogether(pausePlayAnim);
-    mAnimatorSet.start();
+    mPlayPauseDrawable.animateToggle(PLAY_PAUSE_ANIMATION_DURATION);
   }
 }
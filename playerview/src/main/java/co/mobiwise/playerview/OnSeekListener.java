@@ -0,0 +1,39 @@
+/*
+* Copyright (C) 2015 Mert Şimşek
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package co.mobiwise.playerview;
+
+/**
+ * Notified when user drags on progress arc. Positions are milliseconds.
+ */
+public interface OnSeekListener {
+
+  /**
+   * User touched progress arc.
+   */
+  void onSeekStarted(long positionMs);
+
+  /**
+   * Position while dragging. It is throttled, a drag does not call it more than
+   * about ten times a second, only the newest position is delivered.
+   */
+  void onSeek(long positionMs);
+
+  /**
+   * Final position when finger is lifted. It is always delivered. If gesture is
+   * cancelled, last dragged position is final.
+   */
+  void onSeekFinished(long positionMs);
+}
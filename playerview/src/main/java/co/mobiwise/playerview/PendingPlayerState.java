@@ -0,0 +1,46 @@
+/*
+* Copyright (C) 2015 Mert Şimşek
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package co.mobiwise.playerview;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * States published by MusicPlayerView.update() which are not applied yet, merged
+ * into one. Lock free.
+ */
+final class PendingPlayerState {
+
+  private final AtomicReference<PlayerState> mPending = new AtomicReference<PlayerState>();
+
+  /**
+   * Merges state into pending state. Returns true if it is first state since last
+   * take(), then caller must schedule a take().
+   */
+  boolean offer(PlayerState state) {
+    while (true) {
+      PlayerState pending = mPending.get();
+      PlayerState merged = pending != null ? pending.merge(state) : state;
+      if (mPending.compareAndSet(pending, merged)) return pending == null;
+    }
+  }
+
+  /**
+   * Returns merged pending state and starts a new batch, or null if nothing is pending.
+   */
+  PlayerState take() {
+    return mPending.getAndSet(null);
+  }
+}
@@ -0,0 +1,61 @@
+/*
+* Copyright (C) 2015 Mert Şimşek
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package co.mobiwise.playerview;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.drawable.Drawable;
+
+import com.squareup.picasso.Picasso;
+import com.squareup.picasso.RequestCreator;
+import com.squareup.picasso.Target;
+
+/**
+ * CoverLoader which loads covers with Picasso library.
+ */
+public class PicassoCoverLoader implements CoverLoader {
+
+  @Override public Request load(Context context, final String url, int targetWidth,
+      final Callback callback) {
+    final Picasso picasso = Picasso.with(context);
+
+    //Picasso holds targets weakly. Request holds it until load is finished or cancelled.
+    final Target target = new Target() {
+      @Override public void onBitmapLoaded(Bitmap bitmap, Picasso.LoadedFrom from) {
+        callback.onCoverLoaded(url, bitmap);
+      }
+
+      @Override public void onBitmapFailed(Drawable errorDrawable) {
+        callback.onCoverFailed(url, null);
+      }
+
+      @Override public void onPrepareLoad(Drawable placeHolderDrawable) {
+
+      }
+    };
+
+    RequestCreator request = picasso.load(url);
+    //Height 0 keeps aspect ratio. Cover is scaled to view width.
+    if (targetWidth > 0) request.resize(targetWidth, 0);
+    request.into(target);
+
+    return new Request() {
+      @Override public void cancel() {
+        picasso.cancelRequest(target);
+      }
+    };
+  }
+}
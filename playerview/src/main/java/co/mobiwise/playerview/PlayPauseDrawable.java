@@ -15,8 +15,6 @@
 */
 package co.mobiwise.playerview;
 
-import android.animation.Animator;
-import android.animation.AnimatorListenerAdapter;
 import android.animation.ObjectAnimator;
 import android.content.Context;
 import android.content.res.Resources;
@@ -30,6 +28,7 @@ import android.graphics.Rect;
 import android.graphics.RectF;
 import android.graphics.drawable.Drawable;
 import android.util.Property;
+import android.view.animation.DecelerateInterpolator;
 
 public class PlayPauseDrawable extends Drawable {
 
@@ -44,13 +43,33 @@ public class PlayPauseDrawable extends Drawable {
         }
       };
 
-  private final Path mLeftPauseBar = new Path();
-  private final Path mRightPauseBar = new Path();
+  /**
+   * Settled pause and play shapes, built once per size.
+   */
+  private final Path mPausePath = new Path();
+  private final Path mPlayPath = new Path();
+  private boolean mPathsDirty = true;
+
+  /**
+   * Shape of animation frames. It is rewound and rebuilt for every frame.
+   */
+  private final Path mMorphPath = new Path();
+
+  /**
+   * Animator for toggling. It is created once and reversed on every toggle.
+   */
+  private ObjectAnimator mAnimator;
+
+  /**
+   * True if current animation started from play shape. It keeps rotation
+   * direction while animation is reversed midway.
+   */
+  private boolean mRotateFromPlay;
   private final Paint mPaint = new Paint();
   private final RectF mBounds = new RectF();
-  private static float mPauseBarWidth;
-  private static float mPauseBarHeight;
-  private static float mPauseBarDistance;
+  private float mPauseBarWidth;
+  private float mPauseBarHeight;
+  private float mPauseBarDistance;
 
   private OnPlayPauseToggleListener onPlayPauseToggleListener;
 
@@ -58,7 +77,7 @@ public class PlayPauseDrawable extends Drawable {
   private float mHeight;
 
   private float mProgress;
-  private boolean mIsPlay;
+  private volatile boolean mIsPlay;
 
   public PlayPauseDrawable(Context context) {
     final Resources res = context.getResources();
@@ -75,42 +94,30 @@ public class PlayPauseDrawable extends Drawable {
     mBounds.set(bounds);
     mWidth = mBounds.width();
     mHeight = mBounds.height();
+    mPathsDirty = true;
   }
 
   public void setToggleListener(OnPlayPauseToggleListener onPlayPauseToggleListener) {
     this.onPlayPauseToggleListener = onPlayPauseToggleListener;
   }
 
-  @Override public void draw(Canvas canvas) {
-    mLeftPauseBar.rewind();
-    mRightPauseBar.rewind();
+  @Override public synchronized void draw(Canvas canvas) {
+    if (mPathsDirty) {
+      buildBars(mPausePath, 0f);
+      buildBars(mPlayPath, 1f);
+      mPathsDirty = false;
+    }
 
-    // The current distance between the two pause bars.
-    final float barDist = lerp(mPauseBarDistance, 0, mProgress);
-    // The current width of each pause bar.
-    final float barWidth = lerp(mPauseBarWidth, mPauseBarHeight / 2f, mProgress);
-    // The current position of the left pause bar's top left coordinate.
-    final float firstBarTopLeft = lerp(0, barWidth, mProgress);
-    // The current position of the right pause bar's top right coordinate.
-    final float secondBarTopRight = lerp(2 * barWidth + barDist, barWidth + barDist, mProgress);
-
-    // Draw the left pause bar. The left pause bar transforms into the
-    // top half of the play button triangle by animating the position of the
-    // rectangle's top left coordinate and expanding its bottom width.
-    mLeftPauseBar.moveTo(0, 0);
-    mLeftPauseBar.lineTo(firstBarTopLeft, -mPauseBarHeight);
-    mLeftPauseBar.lineTo(barWidth, -mPauseBarHeight);
-    mLeftPauseBar.lineTo(barWidth, 0);
-    mLeftPauseBar.close();
-
-    // Draw the right pause bar. The right pause bar transforms into the
-    // bottom half of the play button triangle by animating the position of the
-    // rectangle's top right coordinate and expanding its bottom width.
-    mRightPauseBar.moveTo(barWidth + barDist, 0);
-    mRightPauseBar.lineTo(barWidth + barDist, -mPauseBarHeight);
-    mRightPauseBar.lineTo(secondBarTopRight, -mPauseBarHeight);
-    mRightPauseBar.lineTo(2 * barWidth + barDist, 0);
-    mRightPauseBar.close();
+    // Settled shapes are cached. Only animation frames build a path.
+    final Path bars;
+    if (mProgress <= 0f) {
+      bars = mPausePath;
+    } else if (mProgress >= 1f) {
+      bars = mPlayPath;
+    } else {
+      buildBars(mMorphPath, mProgress);
+      bars = mMorphPath;
+    }
 
     canvas.save();
 
@@ -119,38 +126,93 @@ public class PlayPauseDrawable extends Drawable {
 
     // (1) Pause --> Play: rotate 0 to 90 degrees clockwise.
     // (2) Play --> Pause: rotate 90 to 180 degrees clockwise.
-    final float rotationProgress = mIsPlay ? 1 - mProgress : mProgress;
-    final float startingRotation = mIsPlay ? 90 : 0;
-    canvas.rotate(lerp(startingRotation, startingRotation + 90, rotationProgress), mWidth / 2f,
-        mHeight / 2f);
-
-    // Position the pause/play button in the center of the drawable's bounds.
-    canvas.translate(mWidth / 2f - ((2 * barWidth + barDist) / 2f),
-        mHeight / 2f + (mPauseBarHeight / 2f));
+    final float rotation = mRotateFromPlay ? 180 - 90 * mProgress : 90 * mProgress;
+    canvas.rotate(rotation, mWidth / 2f, mHeight / 2f);
 
     // Draw the two bars that form the animated pause/play button.
-    canvas.drawPath(mLeftPauseBar, mPaint);
-    canvas.drawPath(mRightPauseBar, mPaint);
+    canvas.drawPath(bars, mPaint);
 
     canvas.restore();
   }
 
-  public Animator getPausePlayAnimator() {
+  /**
+   * Writes two bars of button at progress into path, centered in bounds.
+   * Path is rewound and reused, nothing is allocated.
+   */
+  private void buildBars(Path path, float progress) {
+    path.rewind();
+
+    // The current distance between the two pause bars.
+    final float barDist = lerp(mPauseBarDistance, 0, progress);
+    // The current width of each pause bar.
+    final float barWidth = lerp(mPauseBarWidth, mPauseBarHeight / 2f, progress);
+    // The current position of the left pause bar's top left coordinate.
+    final float firstBarTopLeft = lerp(0, barWidth, progress);
+    // The current position of the right pause bar's top right coordinate.
+    final float secondBarTopRight = lerp(2 * barWidth + barDist, barWidth + barDist, progress);
+
+    // Position the pause/play button in the center of the drawable's bounds.
+    final float left = mWidth / 2f - ((2 * barWidth + barDist) / 2f);
+    final float bottom = mHeight / 2f + (mPauseBarHeight / 2f);
+    final float top = bottom - mPauseBarHeight;
+
+    // The left pause bar transforms into the top half of the play button triangle
+    // by animating the position of the rectangle's top left coordinate and
+    // expanding its bottom width.
+    path.moveTo(left, bottom);
+    path.lineTo(left + firstBarTopLeft, top);
+    path.lineTo(left + barWidth, top);
+    path.lineTo(left + barWidth, bottom);
+    path.close();
+
+    // The right pause bar transforms into the bottom half of the play button
+    // triangle by animating the position of the rectangle's top right coordinate
+    // and expanding its bottom width.
+    path.moveTo(left + barWidth + barDist, bottom);
+    path.lineTo(left + barWidth + barDist, top);
+    path.lineTo(left + secondBarTopRight, top);
+    path.lineTo(left + 2 * barWidth + barDist, bottom);
+    path.close();
+  }
+
+  /**
+   * Animates button to the other shape. Same animator is used for every toggle.
+   * If it is toggled again while animating, animation turns back from where it is.
+   */
+  public synchronized void animateToggle(long duration) {
+    if (mAnimator == null) {
+      mAnimator = ObjectAnimator.ofFloat(this, PROGRESS, 0f, 1f);
+      mAnimator.setInterpolator(new DecelerateInterpolator());
+    }
+    mAnimator.setDuration(duration);
+
+    mIsPlay = !mIsPlay;
+    if (mAnimator.isRunning()) {
+      mAnimator.reverse();
+      return;
+    }
 
-    final Animator anim = ObjectAnimator.ofFloat(this, PROGRESS, mIsPlay ? 1 : 0, mIsPlay ? 0 : 1);
-    anim.addListener(new AnimatorListenerAdapter() {
-      @Override public void onAnimationEnd(Animator animation) {
-        mIsPlay = !mIsPlay;
-      }
-    });
-    return anim;
+    mRotateFromPlay = !mIsPlay;
+    if (mIsPlay) {
+      mAnimator.start();
+    } else {
+      mAnimator.reverse();
+    }
+  }
+
+  /**
+   * True if button shows settled play or pause shape, not an animation frame.
+   * Drawing is synchronized, render thread of MusicPlayerView can draw it.
+   */
+  public synchronized boolean isSettled() {
+    return mProgress <= 0f || mProgress >= 1f;
   }
 
   public boolean isPlay() {
     return mIsPlay;
   }
 
-  private void setProgress(float progress) {
+  synchronized void setProgress(float progress) {
     mProgress = progress;
     invalidateSelf();
   }
@@ -177,6 +239,7 @@ public class PlayPauseDrawable extends Drawable {
     this.mPauseBarWidth = mPauseBarWidth;
     this.mPauseBarHeight = mPauseBarHeight;
     this.mPauseBarDistance = mPauseBarDistance;
+    mPathsDirty = true;
     invalidateSelf();
   }
 
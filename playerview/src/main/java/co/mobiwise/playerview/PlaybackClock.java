@@ -0,0 +1,156 @@
+/*
+* Copyright (C) 2015 Mert Şimşek
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package co.mobiwise.playerview;
+
+import android.os.SystemClock;
+
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Playback position which moves by itself from an anchor position at a speed.
+ * Times are SystemClock.elapsedRealtime() milliseconds. Thread safe.
+ */
+public class PlaybackClock {
+
+  /**
+   * Notified when anchor, speed or duration is changed. Can be called on any thread.
+   */
+  public interface OnClockChangeListener {
+    void onClockChanged(PlaybackClock clock);
+  }
+
+  private final CopyOnWriteArrayList<OnClockChangeListener> mListeners =
+      new CopyOnWriteArrayList<OnClockChangeListener>();
+
+  private long mAnchorPositionMs;
+  private long mAnchorTimeMs;
+  private float mSpeed;
+  private long mDurationMs;
+
+  public PlaybackClock() {
+    this(0);
+  }
+
+  public PlaybackClock(long durationMs) {
+    mDurationMs = Math.max(0, durationMs);
+    mAnchorTimeMs = SystemClock.elapsedRealtime();
+  }
+
+  /**
+   * Sets position at updateTimeMs and speed. Speed 0 means paused, 1 is normal playback.
+   */
+  public void update(long positionMs, float speed, long updateTimeMs) {
+    synchronized (this) {
+      mAnchorPositionMs = clamp(positionMs);
+      mAnchorTimeMs = updateTimeMs;
+      mSpeed = speed;
+    }
+    notifyChanged();
+  }
+
+  /**
+   * Sets position now and speed.
+   */
+  public void update(long positionMs, float speed) {
+    update(positionMs, speed, SystemClock.elapsedRealtime());
+  }
+
+  /**
+   * Seeks to position. Speed is not changed.
+   */
+  public void setPositionMs(long positionMs) {
+    synchronized (this) {
+      mAnchorPositionMs = clamp(positionMs);
+      mAnchorTimeMs = SystemClock.elapsedRealtime();
+    }
+    notifyChanged();
+  }
+
+  /**
+   * Changes speed from current position.
+   */
+  public void setSpeed(float speed) {
+    synchronized (this) {
+      long now = SystemClock.elapsedRealtime();
+      mAnchorPositionMs = getPositionMs(now);
+      mAnchorTimeMs = now;
+      mSpeed = speed;
+    }
+    notifyChanged();
+  }
+
+  /**
+   * Stops position at current position.
+   */
+  public void pause() {
+    setSpeed(0f);
+  }
+
+  public void setDurationMs(long durationMs) {
+    synchronized (this) {
+      mDurationMs = Math.max(0, durationMs);
+    }
+    notifyChanged();
+  }
+
+  public synchronized long getDurationMs() {
+    return mDurationMs;
+  }
+
+  public synchronized float getSpeed() {
+    return mSpeed;
+  }
+
+  /**
+   * True if position is moving.
+   */
+  public synchronized boolean isRunning() {
+    return mSpeed != 0f;
+  }
+
+  public long getPositionMs() {
+    return getPositionMs(SystemClock.elapsedRealtime());
+  }
+
+  /**
+   * Position at given elapsedRealtime() milliseconds. It stays between 0 and duration.
+   */
+  public synchronized long getPositionMs(long nowMs) {
+    //Duration can be made shorter than a paused position
+    if (mSpeed == 0f) return clamp(mAnchorPositionMs);
+    return clamp(mAnchorPositionMs + (long) (mSpeed * (nowMs - mAnchorTimeMs)));
+  }
+
+  public void addOnClockChangeListener(OnClockChangeListener listener) {
+    mListeners.addIfAbsent(listener);
+  }
+
+  public void removeOnClockChangeListener(OnClockChangeListener listener) {
+    mListeners.remove(listener);
+  }
+
+  private long clamp(long positionMs) {
+    if (positionMs < 0) return 0;
+    if (mDurationMs > 0 && positionMs > mDurationMs) return mDurationMs;
+    return positionMs;
+  }
+
+  private void notifyChanged() {
+    for (OnClockChangeListener listener : mListeners) {
+      listener.onClockChanged(this);
+    }
+  }
+}
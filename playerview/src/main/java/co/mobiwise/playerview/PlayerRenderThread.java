@@ -0,0 +1,376 @@
+/*
+* Copyright (C) 2015 Mert Şimşek
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package co.mobiwise.playerview;
+
+import android.annotation.TargetApi;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.PorterDuff;
+import android.graphics.RectF;
+import android.graphics.SurfaceTexture;
+import android.os.Build;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Process;
+import android.view.Choreographer;
+import android.view.TextureView;
+
+import java.util.ArrayList;
+
+/**
+ * Draws MusicPlayerView into a TextureView on its own thread, so cover keeps turning
+ * while main thread is busy. Main thread publishes scenes, render thread reads progress
+ * from thread safe PlaybackClock and calculates rotation by itself.
+ */
+final class PlayerRenderThread extends HandlerThread
+    implements TextureView.SurfaceTextureListener, Choreographer.FrameCallback {
+
+  /**
+   * Everything render thread needs to draw a frame. Scenes are reused, main thread
+   * fills only a scene which is neither published nor drawn. Paints, shader and style
+   * in it are not changed by view while they are drawn.
+   */
+  static final class Scene {
+    float centerX;
+    float centerY;
+    float coverRadius;
+    Paint coverPaint;
+    float buttonRadius;
+    final RectF arcRect = new RectF();
+    float leftTimeX;
+    float passedTimeX;
+    float timeY;
+    PlayerStyle style;
+    boolean progressVisible;
+    boolean rotating;
+    float degreesPerSecond;
+    PlaybackClock clock;
+    boolean seeking;
+    long seekPositionMs;
+    PlayPauseDrawable playPauseDrawable;
+  }
+
+  /**
+   * Published scene, scene being drawn and one which main thread fills.
+   */
+  private static final int SCENE_COUNT = 3;
+
+  private final TextureView mTextureView;
+
+  /**
+   * Surface is destroyed on main thread. It is not destroyed while a frame is drawn.
+   */
+  private final Object mSurfaceLock = new Object();
+  private boolean mSurfaceAvailable;
+
+  private final Scene[] mScenes = new Scene[SCENE_COUNT];
+  private volatile Scene mScene;
+
+  /**
+   * Scene which render thread draws now, null between frames. Main thread does not
+   * change styles of it.
+   */
+  private volatile Scene mDrawingScene;
+  private volatile boolean mPaused;
+  private volatile float mRotateDegrees;
+
+  private Handler mHandler;
+
+  /**
+   * Runnables which run after current frame. Looper drops messages when it quits, so
+   * they are kept here and ones left are run when thread finishes.
+   */
+  private final Object mAfterFrameLock = new Object();
+  private final ArrayList<Runnable> mAfterFrameRunnables = new ArrayList<Runnable>();
+  private boolean mFinished;
+
+  /**
+   * Fields below are used on render thread only.
+   */
+  private Choreographer mChoreographer;
+  private boolean mFramePosted;
+  private long mLastFrameTimeNanos;
+
+  private final ControlsPainter mPainter = new ControlsPainter();
+
+  private final Runnable mRequestFrameRunnable = new Runnable() {
+    @Override public void run() {
+      if (mPaused || mFramePosted) return;
+      if (mChoreographer == null) mChoreographer = Choreographer.getInstance();
+      mFramePosted = true;
+      mChoreographer.postFrameCallback(PlayerRenderThread.this);
+    }
+  };
+
+  private final Runnable mQuitRunnable = new Runnable() {
+    @Override public void run() {
+      if (mChoreographer != null) mChoreographer.removeFrameCallback(PlayerRenderThread.this);
+      if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2) {
+        quitLooperSafely();
+      } else {
+        quit();
+      }
+    }
+  };
+
+  private final Runnable mRunAfterFrameRunnable = new Runnable() {
+    @Override public void run() {
+      runAfterFrameRunnables();
+    }
+  };
+
+  PlayerRenderThread(TextureView textureView, float rotateDegrees) {
+    super("MusicPlayerViewRender", Process.THREAD_PRIORITY_DISPLAY);
+    mTextureView = textureView;
+    mRotateDegrees = rotateDegrees;
+    for (int i = 0; i < SCENE_COUNT; i++) {
+      mScenes[i] = new Scene();
+    }
+  }
+
+  /**
+   * Starts thread. Called on main thread.
+   */
+  void startRendering() {
+    start();
+    mHandler = new Handler(getLooper());
+    mTextureView.setSurfaceTextureListener(this);
+    if (mTextureView.isAvailable()) {
+      synchronized (mSurfaceLock) {
+        mSurfaceAvailable = true;
+      }
+      requestRender();
+    }
+  }
+
+  /**
+   * Stops drawing and quits thread after current frame. Called on main thread.
+   */
+  void stopRendering() {
+    mPaused = true;
+    mTextureView.setSurfaceTextureListener(null);
+    mHandler.removeCallbacks(mRequestFrameRunnable);
+    mHandler.post(mQuitRunnable);
+  }
+
+  /**
+   * Returns a scene to fill and publish. Render thread does not draw it and does not
+   * start to, as it is not published. Called on main thread.
+   */
+  Scene obtainScene() {
+    Scene published = mScene;
+    Scene drawing = mDrawingScene;
+    for (int i = 0; i < SCENE_COUNT; i++) {
+      if (mScenes[i] != published && mScenes[i] != drawing) return mScenes[i];
+    }
+    throw new IllegalStateException("No free scene");
+  }
+
+  /**
+   * Publishes scene which next frames are drawn with. Scene is from obtainScene().
+   */
+  void setScene(Scene scene) {
+    mScene = scene;
+    requestRender();
+  }
+
+  /**
+   * Parked render thread draws nothing until it is resumed.
+   */
+  void setPaused(boolean paused) {
+    mPaused = paused;
+    if (!paused) requestRender();
+  }
+
+  /**
+   * Runs runnable on render thread after frame which is being drawn. Runnable runs when
+   * thread finishes if it is quitting, or now if thread has finished or never started.
+   */
+  void runAfterFrame(Runnable runnable) {
+    synchronized (mAfterFrameLock) {
+      if (!mFinished && mHandler != null) {
+        if (mAfterFrameRunnables.isEmpty()) mHandler.post(mRunAfterFrameRunnable);
+        mAfterFrameRunnables.add(runnable);
+        return;
+      }
+    }
+    runnable.run();
+  }
+
+  /**
+   * True when thread draws nothing anymore.
+   */
+  boolean isFinished() {
+    synchronized (mAfterFrameLock) {
+      return mFinished;
+    }
+  }
+
+  /**
+   * Asks for a frame. Can be called on any thread.
+   */
+  void requestRender() {
+    if (!mPaused && mHandler != null) mHandler.post(mRequestFrameRunnable);
+  }
+
+  /**
+   * True if a frame with style is being drawn. Can be called on any thread.
+   */
+  boolean isDrawing(PlayerStyle style) {
+    Scene scene = mDrawingScene;
+    return scene != null && scene.style == style;
+  }
+
+  /**
+   * Rotation of cover, view continues from it when render thread is stopped.
+   */
+  float getRotateDegrees() {
+    return mRotateDegrees;
+  }
+
+  @Override public void run() {
+    try {
+      super.run();
+    } finally {
+      synchronized (mAfterFrameLock) {
+        mFinished = true;
+      }
+      //Finished thread must not keep cover of its last scene
+      mScene = null;
+      for (int i = 0; i < SCENE_COUNT; i++) {
+        mScenes[i].coverPaint = null;
+      }
+      runAfterFrameRunnables();
+    }
+  }
+
+  @TargetApi(Build.VERSION_CODES.JELLY_BEAN_MR2)
+  private void quitLooperSafely() {
+    quitSafely();
+  }
+
+  private void runAfterFrameRunnables() {
+    while (true) {
+      Runnable runnable;
+      synchronized (mAfterFrameLock) {
+        if (mAfterFrameRunnables.isEmpty()) return;
+        runnable = mAfterFrameRunnables.remove(0);
+      }
+      runnable.run();
+    }
+  }
+
+  @Override public void doFrame(long frameTimeNanos) {
+    mFramePosted = false;
+    Scene scene = acquireScene();
+    try {
+      if (scene == null || mPaused) return;
+      drawFrame(frameTimeNanos, scene);
+    } finally {
+      mDrawingScene = null;
+    }
+  }
+
+  /**
+   * Marks published scene as drawn. It is read again after marking, so a scene which
+   * main thread replaced meanwhile is not drawn.
+   */
+  private Scene acquireScene() {
+    Scene scene;
+    do {
+      scene = mScene;
+      mDrawingScene = scene;
+    } while (scene != mScene);
+    return scene;
+  }
+
+  private void drawFrame(long frameTimeNanos, Scene scene) {
+    //Rotation is calculated from frame time, as on main thread
+    if (scene.rotating) {
+      if (mLastFrameTimeNanos != 0 && frameTimeNanos > mLastFrameTimeNanos) {
+        float elapsedSeconds = (frameTimeNanos - mLastFrameTimeNanos) / 1000000000f;
+        mRotateDegrees = (mRotateDegrees + scene.degreesPerSecond * elapsedSeconds) % 360f;
+      }
+      mLastFrameTimeNanos = frameTimeNanos;
+    } else {
+      mLastFrameTimeNanos = 0;
+    }
+
+    synchronized (mSurfaceLock) {
+      if (!mSurfaceAvailable) return;
+      Canvas canvas = mTextureView.lockCanvas();
+      if (canvas == null) return;
+      try {
+        drawScene(canvas, scene);
+      } finally {
+        mTextureView.unlockCanvasAndPost(canvas);
+      }
+    }
+
+    if (scene.rotating || scene.clock.isRunning() || !scene.playPauseDrawable.isSettled()) {
+      mRequestFrameRunnable.run();
+    }
+  }
+
+  /**
+   * Draws cover, then controls as MusicPlayerView does.
+   */
+  private void drawScene(Canvas canvas, Scene scene) {
+    canvas.drawColor(Color.TRANSPARENT, PorterDuff.Mode.CLEAR);
+
+    if (scene.coverPaint != null) {
+      canvas.save();
+      canvas.rotate(mRotateDegrees, scene.centerX, scene.centerY);
+      canvas.drawCircle(scene.centerX, scene.centerY, scene.coverRadius, scene.coverPaint);
+      canvas.restore();
+    }
+
+    ControlsPainter.drawStaticParts(canvas, scene.style, scene.centerX, scene.centerY,
+        scene.buttonRadius, scene.arcRect, scene.progressVisible);
+    if (scene.progressVisible) {
+      long durationMs = scene.clock.getDurationMs();
+      long positionMs = scene.seeking ? scene.seekPositionMs : scene.clock.getPositionMs();
+      if (durationMs > 0 && positionMs > durationMs) positionMs = durationMs;
+      mPainter.drawProgress(canvas, scene.style, scene.arcRect, positionMs, durationMs, true,
+          scene.leftTimeX, scene.passedTimeX, scene.timeY);
+    }
+
+    scene.playPauseDrawable.draw(canvas);
+  }
+
+  @Override public void onSurfaceTextureAvailable(SurfaceTexture surface, int width, int height) {
+    synchronized (mSurfaceLock) {
+      mSurfaceAvailable = true;
+    }
+    requestRender();
+  }
+
+  @Override public void onSurfaceTextureSizeChanged(SurfaceTexture surface, int width,
+      int height) {
+    requestRender();
+  }
+
+  @Override public boolean onSurfaceTextureDestroyed(SurfaceTexture surface) {
+    synchronized (mSurfaceLock) {
+      mSurfaceAvailable = false;
+    }
+    return true;
+  }
+
+  @Override public void onSurfaceTextureUpdated(SurfaceTexture surface) {
+  }
+}
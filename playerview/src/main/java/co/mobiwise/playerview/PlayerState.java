@@ -0,0 +1,228 @@
+/*
+* Copyright (C) 2015 Mert Şimşek
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package co.mobiwise.playerview;
+
+/**
+ * Immutable batch of player changes, published with MusicPlayerView.update(state).
+ * Fields which are not set are not changed.
+ */
+public final class PlayerState {
+
+  private static final int FLAG_POSITION = 1;
+  private static final int FLAG_DURATION = 1 << 1;
+  private static final int FLAG_PLAYING = 1 << 2;
+  private static final int FLAG_BUTTON_COLOR = 1 << 3;
+  private static final int FLAG_PROGRESS_EMPTY_COLOR = 1 << 4;
+  private static final int FLAG_PROGRESS_LOADED_COLOR = 1 << 5;
+  private static final int FLAG_TIME_COLOR = 1 << 6;
+  private static final int FLAG_PROGRESS_VISIBILITY = 1 << 7;
+
+  private final int mFlags;
+  private final long mPositionMs;
+  private final long mDurationMs;
+  private final boolean mPlaying;
+  private final int mButtonColor;
+  private final int mProgressEmptyColor;
+  private final int mProgressLoadedColor;
+  private final int mTimeColor;
+  private final boolean mProgressVisibility;
+
+  private PlayerState(Builder builder) {
+    mFlags = builder.mFlags;
+    mPositionMs = builder.mPositionMs;
+    mDurationMs = builder.mDurationMs;
+    mPlaying = builder.mPlaying;
+    mButtonColor = builder.mButtonColor;
+    mProgressEmptyColor = builder.mProgressEmptyColor;
+    mProgressLoadedColor = builder.mProgressLoadedColor;
+    mTimeColor = builder.mTimeColor;
+    mProgressVisibility = builder.mProgressVisibility;
+  }
+
+  /**
+   * Returns state which has fields of this state, overwritten by fields set in newer.
+   * View merges states which are published before it applies them.
+   */
+  PlayerState merge(PlayerState newer) {
+    Builder builder = new Builder(this);
+    int flags = newer.mFlags;
+    if ((flags & FLAG_POSITION) != 0) builder.setPositionMs(newer.mPositionMs);
+    if ((flags & FLAG_DURATION) != 0) builder.setDurationMs(newer.mDurationMs);
+    if ((flags & FLAG_PLAYING) != 0) builder.setPlaying(newer.mPlaying);
+    if ((flags & FLAG_BUTTON_COLOR) != 0) builder.setButtonColor(newer.mButtonColor);
+    if ((flags & FLAG_PROGRESS_EMPTY_COLOR) != 0) {
+      builder.setProgressEmptyColor(newer.mProgressEmptyColor);
+    }
+    if ((flags & FLAG_PROGRESS_LOADED_COLOR) != 0) {
+      builder.setProgressLoadedColor(newer.mProgressLoadedColor);
+    }
+    if ((flags & FLAG_TIME_COLOR) != 0) builder.setTimeColor(newer.mTimeColor);
+    if ((flags & FLAG_PROGRESS_VISIBILITY) != 0) {
+      builder.setProgressVisibility(newer.mProgressVisibility);
+    }
+    return builder.build();
+  }
+
+  public boolean hasPositionMs() {
+    return (mFlags & FLAG_POSITION) != 0;
+  }
+
+  public long getPositionMs() {
+    return mPositionMs;
+  }
+
+  public boolean hasDurationMs() {
+    return (mFlags & FLAG_DURATION) != 0;
+  }
+
+  public long getDurationMs() {
+    return mDurationMs;
+  }
+
+  public boolean hasPlaying() {
+    return (mFlags & FLAG_PLAYING) != 0;
+  }
+
+  public boolean isPlaying() {
+    return mPlaying;
+  }
+
+  public boolean hasButtonColor() {
+    return (mFlags & FLAG_BUTTON_COLOR) != 0;
+  }
+
+  public int getButtonColor() {
+    return mButtonColor;
+  }
+
+  public boolean hasProgressEmptyColor() {
+    return (mFlags & FLAG_PROGRESS_EMPTY_COLOR) != 0;
+  }
+
+  public int getProgressEmptyColor() {
+    return mProgressEmptyColor;
+  }
+
+  public boolean hasProgressLoadedColor() {
+    return (mFlags & FLAG_PROGRESS_LOADED_COLOR) != 0;
+  }
+
+  public int getProgressLoadedColor() {
+    return mProgressLoadedColor;
+  }
+
+  public boolean hasTimeColor() {
+    return (mFlags & FLAG_TIME_COLOR) != 0;
+  }
+
+  public int getTimeColor() {
+    return mTimeColor;
+  }
+
+  public boolean hasProgressVisibility() {
+    return (mFlags & FLAG_PROGRESS_VISIBILITY) != 0;
+  }
+
+  public boolean isProgressVisible() {
+    return mProgressVisibility;
+  }
+
+  /**
+   * Builder of PlayerState. It is not thread safe, build state on one thread.
+   */
+  public static final class Builder {
+
+    private int mFlags;
+    private long mPositionMs;
+    private long mDurationMs;
+    private boolean mPlaying;
+    private int mButtonColor;
+    private int mProgressEmptyColor;
+    private int mProgressLoadedColor;
+    private int mTimeColor;
+    private boolean mProgressVisibility;
+
+    public Builder() {
+    }
+
+    private Builder(PlayerState state) {
+      mFlags = state.mFlags;
+      mPositionMs = state.mPositionMs;
+      mDurationMs = state.mDurationMs;
+      mPlaying = state.mPlaying;
+      mButtonColor = state.mButtonColor;
+      mProgressEmptyColor = state.mProgressEmptyColor;
+      mProgressLoadedColor = state.mProgressLoadedColor;
+      mTimeColor = state.mTimeColor;
+      mProgressVisibility = state.mProgressVisibility;
+    }
+
+    public Builder setPositionMs(long positionMs) {
+      mPositionMs = Math.max(0, positionMs);
+      mFlags |= FLAG_POSITION;
+      return this;
+    }
+
+    public Builder setDurationMs(long durationMs) {
+      mDurationMs = Math.max(0, durationMs);
+      mFlags |= FLAG_DURATION;
+      return this;
+    }
+
+    /**
+     * Playing starts rotating cover, not playing stops it.
+     */
+    public Builder setPlaying(boolean playing) {
+      mPlaying = playing;
+      mFlags |= FLAG_PLAYING;
+      return this;
+    }
+
+    public Builder setButtonColor(int color) {
+      mButtonColor = color;
+      mFlags |= FLAG_BUTTON_COLOR;
+      return this;
+    }
+
+    public Builder setProgressEmptyColor(int color) {
+      mProgressEmptyColor = color;
+      mFlags |= FLAG_PROGRESS_EMPTY_COLOR;
+      return this;
+    }
+
+    public Builder setProgressLoadedColor(int color) {
+      mProgressLoadedColor = color;
+      mFlags |= FLAG_PROGRESS_LOADED_COLOR;
+      return this;
+    }
+
+    public Builder setTimeColor(int color) {
+      mTimeColor = color;
+      mFlags |= FLAG_TIME_COLOR;
+      return this;
+    }
+
+    public Builder setProgressVisibility(boolean visible) {
+      mProgressVisibility = visible;
+      mFlags |= FLAG_PROGRESS_VISIBILITY;
+      return this;
+    }
+
+    public PlayerState build() {
+      return new PlayerState(this);
+    }
+  }
+}
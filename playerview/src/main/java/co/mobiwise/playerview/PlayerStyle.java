@@ -0,0 +1,198 @@
+/*
+* Copyright (C) 2015 Mert Şimşek
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package co.mobiwise.playerview;
+
+import android.graphics.Paint;
+import android.util.LruCache;
+
+/**
+ * Immutable set of paints for one player theme. Styles are shared between
+ * MusicPlayerView instances, same colors and text size return same style object.
+ * Paints of a style must never be changed, obtain a new style instead.
+ */
+final class PlayerStyle {
+
+  /**
+   * Max count of different themes kept in cache. Views hold their own style,
+   * so evicted styles are still valid, they are only not shared anymore.
+   */
+  private static final int MAX_CACHED_STYLES = 32;
+
+  /**
+   * Progress arc stroke width
+   */
+  static final float PROGRESS_STROKE_WIDTH = 12.0f;
+
+  private static final LruCache<Key, PlayerStyle> sCache =
+      new LruCache<Key, PlayerStyle>(MAX_CACHED_STYLES);
+
+  final int buttonColor;
+  final int progressEmptyColor;
+  final int progressLoadedColor;
+  final int textColor;
+  final int textSize;
+  final boolean antiAlias;
+
+  /**
+   * True if style is in cache and can be used by more views. Its paints never change.
+   */
+  private final boolean mShared;
+
+  /**
+   * Button paint for play/pause control button
+   */
+  final Paint buttonPaint;
+
+  /**
+   * Paint for circle progress left
+   */
+  final Paint progressEmptyPaint;
+
+  /**
+   * Paint for circle progress loaded
+   */
+  final Paint progressLoadedPaint;
+
+  /**
+   * Paint for drawing left and passed time.
+   */
+  final Paint timePaint;
+
+  private PlayerStyle(Key key, boolean shared) {
+    mShared = shared;
+    buttonColor = key.buttonColor;
+    progressEmptyColor = key.progressEmptyColor;
+    progressLoadedColor = key.progressLoadedColor;
+    textColor = key.textColor;
+    textSize = key.textSize;
+    antiAlias = key.antiAlias;
+
+    //Play/Pause button circle paint
+    buttonPaint = new Paint();
+    buttonPaint.setAntiAlias(antiAlias);
+    buttonPaint.setStyle(Paint.Style.FILL);
+    buttonPaint.setColor(buttonColor);
+
+    //Progress paint object creation
+    progressEmptyPaint = new Paint();
+    progressEmptyPaint.setAntiAlias(antiAlias);
+    progressEmptyPaint.setColor(progressEmptyColor);
+    progressEmptyPaint.setStyle(Paint.Style.STROKE);
+    progressEmptyPaint.setStrokeWidth(PROGRESS_STROKE_WIDTH);
+
+    progressLoadedPaint = new Paint();
+    progressLoadedPaint.setAntiAlias(antiAlias);
+    progressLoadedPaint.setColor(progressLoadedColor);
+    progressLoadedPaint.setStyle(Paint.Style.STROKE);
+    progressLoadedPaint.setStrokeWidth(PROGRESS_STROKE_WIDTH);
+
+    timePaint = new Paint();
+    timePaint.setColor(textColor);
+    timePaint.setAntiAlias(true);
+    timePaint.setTextSize(textSize);
+  }
+
+  /**
+   * Returns shared style for given colors and text size. Creates it if it is not cached.
+   * Shapes are drawn without anti-aliasing if antiAlias is false, text always has it.
+   */
+  static PlayerStyle obtain(int buttonColor, int progressEmptyColor, int progressLoadedColor,
+      int textColor, int textSize, boolean antiAlias) {
+    Key key = new Key(buttonColor, progressEmptyColor, progressLoadedColor, textColor, textSize,
+        antiAlias);
+    synchronized (sCache) {
+      PlayerStyle style = sCache.get(key);
+      if (style == null) {
+        style = new PlayerStyle(key, true);
+        sCache.put(key, style);
+      }
+      return style;
+    }
+  }
+
+  /**
+   * Creates a style which is not cached. Only its creator uses it, so its colors
+   * can be changed with setColors(), for example while colors cross fade.
+   */
+  static PlayerStyle createUncached(int buttonColor, int progressEmptyColor,
+      int progressLoadedColor, int textColor, int textSize, boolean antiAlias) {
+    return new PlayerStyle(new Key(buttonColor, progressEmptyColor, progressLoadedColor, textColor,
+        textSize, antiAlias), false);
+  }
+
+  /**
+   * Changes paint colors of an uncached style. Shared styles can not be changed.
+   */
+  void setColors(int buttonColor, int progressLoadedColor, int textColor) {
+    if (mShared) throw new IllegalStateException("Shared style can not be changed");
+    buttonPaint.setColor(buttonColor);
+    progressLoadedPaint.setColor(progressLoadedColor);
+    timePaint.setColor(textColor);
+  }
+
+  /**
+   * Returns count of styles in cache.
+   */
+  static int cachedStyleCount() {
+    synchronized (sCache) {
+      return sCache.size();
+    }
+  }
+
+  /**
+   * Cache key. Values which make a style different.
+   */
+  private static final class Key {
+    final int buttonColor;
+    final int progressEmptyColor;
+    final int progressLoadedColor;
+    final int textColor;
+    final int textSize;
+    final boolean antiAlias;
+
+    Key(int buttonColor, int progressEmptyColor, int progressLoadedColor, int textColor,
+        int textSize, boolean antiAlias) {
+      this.buttonColor = buttonColor;
+      this.progressEmptyColor = progressEmptyColor;
+      this.progressLoadedColor = progressLoadedColor;
+      this.textColor = textColor;
+      this.textSize = textSize;
+      this.antiAlias = antiAlias;
+    }
+
+    @Override public boolean equals(Object o) {
+      if (this == o) return true;
+      if (!(o instanceof Key)) return false;
+      Key key = (Key) o;
+      return buttonColor == key.buttonColor
+          && progressEmptyColor == key.progressEmptyColor
+          && progressLoadedColor == key.progressLoadedColor
+          && textColor == key.textColor
+          && textSize == key.textSize
+          && antiAlias == key.antiAlias;
+    }
+
+    @Override public int hashCode() {
+      int result = buttonColor;
+      result = 31 * result + progressEmptyColor;
+      result = 31 * result + progressLoadedColor;
+      result = 31 * result + textColor;
+      result = 31 * result + textSize;
+      result = 31 * result + (antiAlias ? 1 : 0);
+      return result;
+    }
+  }
+}
@@ -0,0 +1,107 @@
+/*
+* Copyright (C) 2015 Mert Şimşek
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package co.mobiwise.playerview;
+
+import android.view.Choreographer;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+
+/**
+ * Runs frame callbacks of all animating player views from one Choreographer callback.
+ * Used on main thread only.
+ */
+final class PlayerTicker implements Choreographer.FrameCallback {
+
+  private static PlayerTicker sInstance;
+
+  private final Choreographer mChoreographer = Choreographer.getInstance();
+
+  /**
+   * Callbacks of next frame. They are swapped with mRunning on every frame, so
+   * callbacks posted while a frame runs are run on next frame and nothing is allocated.
+   */
+  private ArrayList<Choreographer.FrameCallback> mPending =
+      new ArrayList<Choreographer.FrameCallback>();
+  private ArrayList<Choreographer.FrameCallback> mRunning =
+      new ArrayList<Choreographer.FrameCallback>();
+
+  /**
+   * Callbacks in mPending. Identity map does not allocate entries, so posting again
+   * on every frame is checked in constant time without garbage.
+   */
+  private final IdentityHashMap<Choreographer.FrameCallback, Boolean> mPosted =
+      new IdentityHashMap<Choreographer.FrameCallback, Boolean>();
+
+  private boolean mFramePosted;
+
+  private PlayerTicker() {
+  }
+
+  static PlayerTicker getInstance() {
+    if (sInstance == null) sInstance = new PlayerTicker();
+    return sInstance;
+  }
+
+  /**
+   * Drops ticker with its callbacks and Choreographer, next getInstance makes a new one.
+   * Tests call it after each test.
+   */
+  static void reset() {
+    sInstance = null;
+  }
+
+  /**
+   * Runs callback once on next frame, as Choreographer does.
+   */
+  void postFrameCallback(Choreographer.FrameCallback callback) {
+    if (mPosted.put(callback, Boolean.TRUE) != null) return;
+    mPending.add(callback);
+    if (!mFramePosted) {
+      mFramePosted = true;
+      mChoreographer.postFrameCallback(this);
+    }
+  }
+
+  void removeFrameCallback(Choreographer.FrameCallback callback) {
+    if (mPosted.remove(callback) != null) mPending.remove(callback);
+    int index = mRunning.indexOf(callback);
+    if (index >= 0) mRunning.set(index, null);
+  }
+
+  /**
+   * Count of callbacks waiting for next frame.
+   */
+  int getCallbackCount() {
+    return mPending.size();
+  }
+
+  @Override public void doFrame(long frameTimeNanos) {
+    mFramePosted = false;
+
+    ArrayList<Choreographer.FrameCallback> running = mPending;
+    mPending = mRunning;
+    mRunning = running;
+    mPosted.clear();
+
+    //Views invalidate directly here, all of them are drawn in one traversal
+    for (int i = 0; i < running.size(); i++) {
+      Choreographer.FrameCallback callback = running.get(i);
+      if (callback != null) callback.doFrame(frameTimeNanos);
+    }
+    running.clear();
+  }
+}
@@ -0,0 +1,326 @@
+/*
+* Copyright (C) 2015 Mert Şimşek
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package co.mobiwise.playerview;
+
+/**
+ * Opt-in cost statistics of a MusicPlayerView, set with MusicPlayerView.setStats().
+ * Used on main thread.
+ */
+public final class PlayerViewStats {
+
+  /**
+   * Upper limits of draw time histogram buckets in milliseconds. Last bucket
+   * holds draws which take longer than last limit.
+   */
+  private static final long[] DRAW_BUCKET_LIMITS_MS = { 1, 2, 4, 8, 16, 33 };
+
+  /**
+   * Draw time histogram bucket count.
+   */
+  public static final int DRAW_BUCKET_COUNT = DRAW_BUCKET_LIMITS_MS.length + 1;
+
+  private static final long NANOS_PER_MS = 1000000L;
+
+  private static final long NANOS_PER_SECOND = 1000000000L;
+
+  /**
+   * Default frame interval for 60 fps display.
+   */
+  private static final long DEFAULT_FRAME_INTERVAL_NANOS = NANOS_PER_SECOND / 60;
+
+  /**
+   * Listener for stats which are published once a second.
+   */
+  public interface OnStatsListener {
+    void onStats(PlayerViewStats stats);
+  }
+
+  private OnStatsListener mListener;
+
+  private final long[] mDrawHistogram = new long[DRAW_BUCKET_COUNT];
+  private long mDrawCount;
+  private long mDrawTotalNanos;
+  private long mDrawMaxNanos;
+
+  private long mInvalidates;
+  private long mStateApplies;
+  private long mInvalidatedPixels;
+  private long mInvalidatesPerSecond;
+  private long mInvalidatedPixelsPerSecond;
+  private long mWindowInvalidates;
+  private long mWindowInvalidatedPixels;
+  private long mWindowStartNanos;
+
+  private long mFrameIntervalNanos = DEFAULT_FRAME_INTERVAL_NANOS;
+  private long mLastFrameTimeNanos;
+  private long mFrameCount;
+  private long mLateFrameCount;
+  private long mDroppedFrameCount;
+
+  private long mLastCoverRequestNanos;
+  private long mLastShaderBuildNanos;
+  private long mLastCoverSwapNanos;
+  private long mShaderBuildCount;
+
+  private long mCoverBytes;
+
+  /**
+   * Sets listener which is called on main thread about once a second.
+   */
+  public void setOnStatsListener(OnStatsListener listener) {
+    mListener = listener;
+  }
+
+  /**
+   * Draw count which is measured.
+   */
+  public long getDrawCount() {
+    return mDrawCount;
+  }
+
+  /**
+   * Copies draw time histogram to counts. Its length must be at least
+   * DRAW_BUCKET_COUNT.
+   */
+  public void getDrawHistogram(long[] counts) {
+    System.arraycopy(mDrawHistogram, 0, counts, 0, DRAW_BUCKET_COUNT);
+  }
+
+  /**
+   * Upper limit of histogram bucket in milliseconds. Last bucket has no limit,
+   * Long.MAX_VALUE is returned for it.
+   */
+  public static long getDrawBucketLimitMs(int bucket) {
+    return bucket < DRAW_BUCKET_LIMITS_MS.length ? DRAW_BUCKET_LIMITS_MS[bucket] : Long.MAX_VALUE;
+  }
+
+  public long getAverageDrawNanos() {
+    return mDrawCount == 0 ? 0 : mDrawTotalNanos / mDrawCount;
+  }
+
+  public long getMaxDrawNanos() {
+    return mDrawMaxNanos;
+  }
+
+  /**
+   * Invalidate calls in last second.
+   */
+  public long getInvalidatesPerSecond() {
+    return mInvalidatesPerSecond;
+  }
+
+  /**
+   * Invalidated pixels in last second. Dirty areas are counted as themselves only
+   * when they are redrawn alone, which is with software rendering. Hardware
+   * rendering redraws whole view on API 21+, so whole view is counted then.
+   */
+  public long getInvalidatedPixelsPerSecond() {
+    return mInvalidatedPixelsPerSecond;
+  }
+
+  public long getInvalidateCount() {
+    return mInvalidates;
+  }
+
+  /**
+   * States applied on main thread. update() calls made before one is applied are
+   * merged into it, so it is at most update() count.
+   */
+  public long getStateApplyCount() {
+    return mStateApplies;
+  }
+
+  /**
+   * Invalidated pixels since reset, counted as getInvalidatedPixelsPerSecond() counts.
+   */
+  public long getInvalidatedPixels() {
+    return mInvalidatedPixels;
+  }
+
+  /**
+   * Animation frame count.
+   */
+  public long getFrameCount() {
+    return mFrameCount;
+  }
+
+  /**
+   * Frames which run more than one frame interval after their vsync.
+   */
+  public long getLateFrameCount() {
+    return mLateFrameCount;
+  }
+
+  /**
+   * Vsyncs skipped between two animation frames while animating.
+   */
+  public long getDroppedFrameCount() {
+    return mDroppedFrameCount;
+  }
+
+  /**
+   * Time from cover decode or load request until bitmap is delivered on main thread.
+   */
+  public long getLastCoverRequestNanos() {
+    return mLastCoverRequestNanos;
+  }
+
+  /**
+   * Time of scaling cover and creating its shader.
+   */
+  public long getLastShaderBuildNanos() {
+    return mLastShaderBuildNanos;
+  }
+
+  /**
+   * Time from setting a cover until first frame which draws it. Prefetched covers
+   * skip decoding and scaling, then this is only a shader swap and a frame.
+   */
+  public long getLastCoverSwapNanos() {
+    return mLastCoverSwapNanos;
+  }
+
+  /**
+   * Times cover was scaled or its shader was created. Measuring or laying view out
+   * again at same size does not change it.
+   */
+  public long getShaderBuildCount() {
+    return mShaderBuildCount;
+  }
+
+  /**
+   * Bytes of cover bitmaps which are held by view. Shared cached bitmaps are counted too.
+   */
+  public long getCoverBytes() {
+    return mCoverBytes;
+  }
+
+  /**
+   * Clears all counters.
+   */
+  public void reset() {
+    for (int i = 0; i < DRAW_BUCKET_COUNT; i++) {
+      mDrawHistogram[i] = 0;
+    }
+    mDrawCount = 0;
+    mDrawTotalNanos = 0;
+    mDrawMaxNanos = 0;
+    mInvalidates = 0;
+    mStateApplies = 0;
+    mInvalidatedPixels = 0;
+    mInvalidatesPerSecond = 0;
+    mInvalidatedPixelsPerSecond = 0;
+    mWindowInvalidates = 0;
+    mWindowInvalidatedPixels = 0;
+    mWindowStartNanos = 0;
+    mLastFrameTimeNanos = 0;
+    mFrameCount = 0;
+    mLateFrameCount = 0;
+    mDroppedFrameCount = 0;
+    mLastCoverRequestNanos = 0;
+    mLastShaderBuildNanos = 0;
+    mLastCoverSwapNanos = 0;
+    mShaderBuildCount = 0;
+  }
+
+  void recordDraw(long startNanos, long endNanos) {
+    long nanos = endNanos - startNanos;
+    long ms = nanos / NANOS_PER_MS;
+    int bucket = 0;
+    while (bucket < DRAW_BUCKET_LIMITS_MS.length && ms >= DRAW_BUCKET_LIMITS_MS[bucket]) {
+      bucket++;
+    }
+    mDrawHistogram[bucket]++;
+    mDrawCount++;
+    mDrawTotalNanos += nanos;
+    if (nanos > mDrawMaxNanos) mDrawMaxNanos = nanos;
+    publishIfDue(endNanos);
+  }
+
+  void recordInvalidate(long pixels) {
+    mInvalidates++;
+    mInvalidatedPixels += pixels;
+    mWindowInvalidates++;
+    mWindowInvalidatedPixels += pixels;
+  }
+
+  void recordStateApply() {
+    mStateApplies++;
+  }
+
+  /**
+   * Records an animation frame with its vsync time and time it is run.
+   */
+  void recordFrame(long frameTimeNanos, long nowNanos) {
+    mFrameCount++;
+    if (nowNanos - frameTimeNanos > mFrameIntervalNanos) mLateFrameCount++;
+    if (mLastFrameTimeNanos != 0) {
+      long missed = (frameTimeNanos - mLastFrameTimeNanos + mFrameIntervalNanos / 2)
+          / mFrameIntervalNanos - 1;
+      if (missed > 0) mDroppedFrameCount += missed;
+    }
+    mLastFrameTimeNanos = frameTimeNanos;
+    publishIfDue(nowNanos);
+  }
+
+  /**
+   * Animation is stopped or parked. Next frame is not compared with last one.
+   */
+  void breakFrames() {
+    mLastFrameTimeNanos = 0;
+  }
+
+  void setFrameIntervalNanos(long frameIntervalNanos) {
+    if (frameIntervalNanos > 0) mFrameIntervalNanos = frameIntervalNanos;
+  }
+
+  void recordCoverRequest(long nanos) {
+    mLastCoverRequestNanos = nanos;
+  }
+
+  void recordShaderBuild(long nanos) {
+    mLastShaderBuildNanos = nanos;
+    mShaderBuildCount++;
+  }
+
+  void recordCoverSwap(long nanos) {
+    mLastCoverSwapNanos = nanos;
+  }
+
+  void setCoverBytes(long bytes) {
+    mCoverBytes = bytes;
+  }
+
+  /**
+   * Closes per second window and notifies listener once a second.
+   */
+  private void publishIfDue(long nowNanos) {
+    if (mWindowStartNanos == 0) {
+      mWindowStartNanos = nowNanos;
+      return;
+    }
+    long elapsed = nowNanos - mWindowStartNanos;
+    if (elapsed < NANOS_PER_SECOND) return;
+
+    mInvalidatesPerSecond = mWindowInvalidates * NANOS_PER_SECOND / elapsed;
+    mInvalidatedPixelsPerSecond = mWindowInvalidatedPixels * NANOS_PER_SECOND / elapsed;
+    mWindowInvalidates = 0;
+    mWindowInvalidatedPixels = 0;
+    mWindowStartNanos = nowNanos;
+
+    if (mListener != null) mListener.onStats(this);
+  }
+}
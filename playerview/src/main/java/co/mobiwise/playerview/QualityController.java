@@ -0,0 +1,86 @@
+/*
+* Copyright (C) 2015 Mert Şimşek
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package co.mobiwise.playerview;
+
+/**
+ * Judges frame times of a view by its policy and decides quality level.
+ * It is used on main thread only.
+ */
+final class QualityController {
+
+  private final QualityPolicy mPolicy;
+
+  private int mLevel = QualityPolicy.LEVEL_FULL;
+  private long mLastFrameTimeNanos;
+  private int mFrames;
+  private int mJankFrames;
+  private int mGoodWindows;
+
+  QualityController(QualityPolicy policy) {
+    mPolicy = policy;
+  }
+
+  QualityPolicy getPolicy() {
+    return mPolicy;
+  }
+
+  int getLevel() {
+    return mLevel;
+  }
+
+  /**
+   * Counts a frame. A frame which comes more than one and a half interval after
+   * previous one missed its vsync. Returns true if level is changed.
+   */
+  boolean onFrame(long frameTimeNanos, long frameIntervalNanos) {
+    long last = mLastFrameTimeNanos;
+    mLastFrameTimeNanos = frameTimeNanos;
+    if (last == 0) return false;
+
+    mFrames++;
+    if (frameTimeNanos - last > frameIntervalNanos * 3 / 2) mJankFrames++;
+    if (mFrames < mPolicy.getWindowFrames()) return false;
+
+    float jankRatio = (float) mJankFrames / mFrames;
+    mFrames = 0;
+    mJankFrames = 0;
+
+    if (jankRatio > mPolicy.getStepDownJankRatio()) {
+      mGoodWindows = 0;
+      if (mLevel < mPolicy.getMaxLevel()) {
+        mLevel++;
+        return true;
+      }
+    } else if (jankRatio < mPolicy.getStepUpJankRatio()) {
+      mGoodWindows++;
+      if (mGoodWindows >= mPolicy.getStepUpWindows() && mLevel > QualityPolicy.LEVEL_FULL) {
+        mGoodWindows = 0;
+        mLevel--;
+        return true;
+      }
+    } else {
+      mGoodWindows = 0;
+    }
+    return false;
+  }
+
+  /**
+   * Frames are stopped or parked. Next frame is not compared with last one.
+   */
+  void breakFrames() {
+    mLastFrameTimeNanos = 0;
+  }
+}
@@ -0,0 +1,133 @@
+/*
+* Copyright (C) 2015 Mert Şimşek
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package co.mobiwise.playerview;
+
+/**
+ * Policy of adaptive quality. MusicPlayerView watches its frame times and steps down
+ * one level when too many frames miss their vsync, and steps back up when frames are
+ * on time again. Levels are cumulative, each level also has all lower ones.
+ */
+public final class QualityPolicy {
+
+  /**
+   * Everything is drawn in full quality.
+   */
+  public static final int LEVEL_FULL = 0;
+
+  /**
+   * Cover rotation is updated on every second frame.
+   */
+  public static final int LEVEL_REDUCED_FRAME_RATE = 1;
+
+  /**
+   * Cover, button and arcs are drawn without anti-aliasing.
+   */
+  public static final int LEVEL_NO_ANTI_ALIAS = 2;
+
+  /**
+   * Cover bitmap is half of view width.
+   */
+  public static final int LEVEL_SMALL_COVER = 3;
+
+  /**
+   * Time texts are not drawn.
+   */
+  public static final int LEVEL_NO_TIME_TEXT = 4;
+
+  /**
+   * Notified on main thread when quality level changes.
+   */
+  public interface OnQualityChangeListener {
+    void onQualityChanged(int level);
+  }
+
+  private int mWindowFrames = 60;
+  private float mStepDownJankRatio = 0.25f;
+  private float mStepUpJankRatio = 0.05f;
+  private int mStepUpWindows = 3;
+  private int mMaxLevel = LEVEL_NO_TIME_TEXT;
+  private OnQualityChangeListener mListener;
+
+  /**
+   * Frames are judged in windows of this many frames. Default is 60.
+   */
+  public QualityPolicy setWindowFrames(int windowFrames) {
+    mWindowFrames = Math.max(1, windowFrames);
+    return this;
+  }
+
+  public int getWindowFrames() {
+    return mWindowFrames;
+  }
+
+  /**
+   * Quality steps down if more than this part of a window missed vsync. Default is 0.25.
+   */
+  public QualityPolicy setStepDownJankRatio(float ratio) {
+    mStepDownJankRatio = ratio;
+    return this;
+  }
+
+  public float getStepDownJankRatio() {
+    return mStepDownJankRatio;
+  }
+
+  /**
+   * Quality steps up after getStepUpWindows() windows in a row where less than this
+   * part missed vsync. Default is 0.05.
+   */
+  public QualityPolicy setStepUpJankRatio(float ratio) {
+    mStepUpJankRatio = ratio;
+    return this;
+  }
+
+  public float getStepUpJankRatio() {
+    return mStepUpJankRatio;
+  }
+
+  /**
+   * Count of good windows in a row which steps quality up. Default is 3.
+   */
+  public QualityPolicy setStepUpWindows(int windows) {
+    mStepUpWindows = Math.max(1, windows);
+    return this;
+  }
+
+  public int getStepUpWindows() {
+    return mStepUpWindows;
+  }
+
+  /**
+   * Lowest quality which can be stepped down to. Default is LEVEL_NO_TIME_TEXT.
+   */
+  public QualityPolicy setMaxLevel(int level) {
+    mMaxLevel = Math.max(LEVEL_FULL, Math.min(LEVEL_NO_TIME_TEXT, level));
+    return this;
+  }
+
+  public int getMaxLevel() {
+    return mMaxLevel;
+  }
+
+  public QualityPolicy setOnQualityChangeListener(OnQualityChangeListener listener) {
+    mListener = listener;
+    return this;
+  }
+
+  public OnQualityChangeListener getOnQualityChangeListener() {
+    return mListener;
+  }
+}
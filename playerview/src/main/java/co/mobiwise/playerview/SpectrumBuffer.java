@@ -0,0 +1,133 @@
+/*
+* Copyright (C) 2015 Mert Şimşek
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package co.mobiwise.playerview;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Lock free single producer, single consumer ring of spectrum frames. Main thread
+ * reads only the newest one.
+ */
+public final class SpectrumBuffer {
+
+  /**
+   * Called on producer thread when a frame is written after consumer asked for wakeup.
+   */
+  public interface OnFrameAvailableListener {
+    void onFrameAvailable(SpectrumBuffer buffer);
+  }
+
+  private static final int DEFAULT_CAPACITY = 4;
+
+  private final int mBinCount;
+  private final int mCapacity;
+  private final float[] mFrames;
+
+  /**
+   * Count of frames published by producer. Frame n is in slot n % capacity.
+   */
+  private volatile long mWritten;
+
+  /**
+   * Last frame count which consumer read.
+   */
+  private long mRead;
+
+  private final AtomicBoolean mWakeupRequested = new AtomicBoolean();
+  private volatile OnFrameAvailableListener mListener;
+
+  public SpectrumBuffer(int binCount) {
+    this(binCount, DEFAULT_CAPACITY);
+  }
+
+  public SpectrumBuffer(int binCount, int capacity) {
+    if (binCount <= 0) throw new IllegalArgumentException("binCount must be positive");
+    if (capacity < 2) throw new IllegalArgumentException("capacity must be at least 2");
+    mBinCount = binCount;
+    mCapacity = capacity;
+    mFrames = new float[binCount * capacity];
+  }
+
+  public int getBinCount() {
+    return mBinCount;
+  }
+
+  /**
+   * Writes a frame of getBinCount() magnitudes between 0 and 1. Must be called
+   * from one producer thread only.
+   */
+  public void write(float[] magnitudes) {
+    long written = mWritten;
+    int offset = (int) (written % mCapacity) * mBinCount;
+    System.arraycopy(magnitudes, 0, mFrames, offset, mBinCount);
+
+    //Volatile write publishes frame to consumer
+    mWritten = written + 1;
+
+    if (mWakeupRequested.compareAndSet(true, false)) {
+      OnFrameAvailableListener listener = mListener;
+      if (listener != null) listener.onFrameAvailable(this);
+    }
+  }
+
+  /**
+   * Copies newest frame to out if a frame was written since last read.
+   * Returns false if there is no new frame. Must be called from one consumer thread only.
+   */
+  public boolean readLatest(float[] out) {
+    while (true) {
+      long written = mWritten;
+      if (written == mRead) return false;
+
+      long frame = written - 1;
+      int offset = (int) (frame % mCapacity) * mBinCount;
+      System.arraycopy(mFrames, offset, out, 0, mBinCount);
+
+      //Producer may have reused the slot while we were copying, read newest again then
+      if (mWritten - frame < mCapacity) {
+        mRead = written;
+        return true;
+      }
+    }
+  }
+
+  /**
+   * True if a frame was written since last read.
+   */
+  public boolean hasNewFrame() {
+    return mWritten != mRead;
+  }
+
+  /**
+   * Listener is called once for next written frame after requestWakeup.
+   */
+  public void setOnFrameAvailableListener(OnFrameAvailableListener listener) {
+    mListener = listener;
+  }
+
+  /**
+   * Asks producer to call listener on next frame. Consumer calls it when it stops
+   * polling. Returns true if a frame is already available, then consumer must not wait.
+   */
+  public boolean requestWakeup() {
+    mWakeupRequested.set(true);
+    if (hasNewFrame()) {
+      mWakeupRequested.set(false);
+      return true;
+    }
+    return false;
+  }
+}
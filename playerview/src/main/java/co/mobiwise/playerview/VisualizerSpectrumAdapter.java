@@ -0,0 +1,85 @@
+/*
+* Copyright (C) 2015 Mert Şimşek
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package co.mobiwise.playerview;
+
+import android.media.audiofx.Visualizer;
+
+/**
+ * Writes FFT magnitudes of an audio session into a SpectrumBuffer. Visualizer calls
+ * back on its own thread, which is the only producer of buffer. App needs
+ * RECORD_AUDIO permission to use Visualizer.
+ */
+public class VisualizerSpectrumAdapter implements Visualizer.OnDataCaptureListener {
+
+  private final SpectrumBuffer mBuffer;
+  private final float[] mMagnitudes;
+
+  private Visualizer mVisualizer;
+
+  public VisualizerSpectrumAdapter(SpectrumBuffer buffer) {
+    mBuffer = buffer;
+    mMagnitudes = new float[buffer.getBinCount()];
+  }
+
+  /**
+   * Starts capturing FFT of audio session. 0 is output mix.
+   */
+  public void attach(int audioSessionId) {
+    release();
+    mVisualizer = new Visualizer(audioSessionId);
+
+    //Capture size is a power of two, FFT of n samples has n / 2 bins
+    int[] range = Visualizer.getCaptureSizeRange();
+    int captureSize = range[0];
+    while (captureSize / 2 < mMagnitudes.length && captureSize < range[1]) {
+      captureSize *= 2;
+    }
+    mVisualizer.setCaptureSize(captureSize);
+    mVisualizer.setDataCaptureListener(this, Visualizer.getMaxCaptureRate(), false, true);
+    mVisualizer.setEnabled(true);
+  }
+
+  /**
+   * Stops capturing and releases visualizer.
+   */
+  public void release() {
+    if (mVisualizer != null) {
+      mVisualizer.setEnabled(false);
+      mVisualizer.release();
+      mVisualizer = null;
+    }
+  }
+
+  @Override public void onWaveFormDataCapture(Visualizer visualizer, byte[] waveform,
+      int samplingRate) {
+  }
+
+  /**
+   * fft is DC real, nyquist real, then real and imaginary parts of each bin.
+   */
+  @Override public void onFftDataCapture(Visualizer visualizer, byte[] fft, int samplingRate) {
+    int bins = Math.min(mMagnitudes.length, fft.length / 2 - 1);
+    for (int k = 0; k < bins; k++) {
+      float re = fft[2 + 2 * k];
+      float im = fft[3 + 2 * k];
+      mMagnitudes[k] = Math.min(1f, (float) Math.sqrt(re * re + im * im) / 128f);
+    }
+    for (int k = Math.max(0, bins); k < mMagnitudes.length; k++) {
+      mMagnitudes[k] = 0;
+    }
+    mBuffer.write(mMagnitudes);
+  }
+}
@@ -0,0 +1,131 @@
+/*
+* Copyright (C) 2015 Mert Şimşek
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package co.mobiwise.playerview;
+
+import com.google.monitoring.runtime.instrumentation.AllocationRecorder;
+import com.google.monitoring.runtime.instrumentation.Sampler;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Counts objects which library code allocates on test thread between start() and stop().
+ * Needs allocation instrumenter agent.
+ */
+final class AllocationCounter implements Sampler {
+
+  private static final String LIBRARY_PACKAGE = "co.mobiwise.playerview.";
+
+  /**
+   * Allocations which are described in failure message.
+   */
+  private static final int MAX_REPORTED = 10;
+
+  /**
+   * Allocated while counting to check that agent is loaded.
+   */
+  private static Object sProbe;
+
+  private final Thread mThread = Thread.currentThread();
+  private final StringBuilder mReport = new StringBuilder();
+  private final Map<String, Integer> mCountByType = new HashMap<String, Integer>();
+  private volatile boolean mCounting;
+  private int mSampled;
+  private int mCount;
+
+  private AllocationCounter() {
+  }
+
+  /**
+   * Starts counting. Fails if allocations are not recorded at all.
+   */
+  static AllocationCounter start() {
+    AllocationCounter counter = new AllocationCounter();
+    AllocationRecorder.addSampler(counter);
+    counter.mCounting = true;
+    sProbe = new Object();
+    if (counter.mSampled == 0) {
+      counter.stop();
+      throw new AssertionError("Allocation instrumenter agent is not loaded");
+    }
+    return counter;
+  }
+
+  /**
+   * Stops counting and returns count of library allocations.
+   */
+  int stop() {
+    mCounting = false;
+    AllocationRecorder.removeSampler(this);
+    return mCount;
+  }
+
+  /**
+   * Library allocations of one type, for example "android/graphics/Paint".
+   */
+  int getCount(String type) {
+    Integer count = mCountByType.get(type);
+    return count != null ? count : 0;
+  }
+
+  /**
+   * Stops counting and fails with allocation sites if library allocated anything.
+   */
+  void assertNone(String what) {
+    int count = stop();
+    if (count != 0) {
+      throw new AssertionError(what + " allocated " + count + " objects:" + mReport);
+    }
+  }
+
+  @Override public void sampleAllocation(int count, String desc, Object newObj, long size) {
+    if (!mCounting || Thread.currentThread() != mThread) return;
+    mSampled++;
+
+    StackTraceElement site = allocationSite(new Throwable().getStackTrace());
+    if (site == null || !isLibrary(site.getClassName())) return;
+
+    if (mCount < MAX_REPORTED) mReport.append("\n  ").append(desc).append(" at ").append(site);
+    mCount++;
+    mCountByType.put(desc, getCount(desc) + 1);
+  }
+
+  /**
+   * First frame which is not JDK, agent or this counter.
+   */
+  private static StackTraceElement allocationSite(StackTraceElement[] trace) {
+    for (StackTraceElement frame : trace) {
+      String name = frame.getClassName();
+      if (name.startsWith("java.") || name.startsWith("javax.") || name.startsWith("sun.")
+          || name.startsWith("com.sun.") || name.startsWith("com.google.monitoring.")
+          || name.equals(AllocationCounter.class.getName())) {
+        continue;
+      }
+      return frame;
+    }
+    return null;
+  }
+
+  /**
+   * Library classes, not tests of this package.
+   */
+  private static boolean isLibrary(String className) {
+    if (!className.startsWith(LIBRARY_PACKAGE)) return false;
+    int nested = className.indexOf('$');
+    String outer = nested < 0 ? className : className.substring(0, nested);
+    return !outer.endsWith("Test") && !outer.endsWith("Benchmark");
+  }
+}
@@ -0,0 +1,119 @@
+/*
+* Copyright (C) 2015 Mert Şimşek
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package co.mobiwise.playerview;
+
+import org.junit.Assume;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Tiny benchmark harness. Reports ns/op percentiles and bytes/op. Skipped unless gradle
+ * is run with -Pbenchmark.
+ */
+final class Benchmarks {
+
+  private static final int WARM_UP_ROUNDS = 20;
+  private static final int ROUNDS = 100;
+
+  /**
+   * One operation. Index lets operation vary its input without allocating.
+   */
+  interface Operation {
+    void run(int index);
+  }
+
+  private Benchmarks() {
+  }
+
+  /**
+   * Skips calling test if benchmarks are not enabled.
+   */
+  static void assumeEnabled() {
+    Assume.assumeTrue("Run with -Pbenchmark", Boolean.getBoolean("playerview.benchmark"));
+  }
+
+  /**
+   * Runs operation opsPerRound times in each round. Result line is printed and appended to
+   * benchmarks.txt of playerview.benchmarkDir. Bytes are -1 if JVM does not count thread
+   * allocations.
+   */
+  static void run(String name, int opsPerRound, Operation operation) throws IOException {
+    for (int round = 0; round < WARM_UP_ROUNDS; round++) {
+      runRound(opsPerRound, operation);
+    }
+
+    double[] nanosPerOp = new double[ROUNDS];
+    long startBytes = allocatedBytes();
+    for (int round = 0; round < ROUNDS; round++) {
+      nanosPerOp[round] = (double) runRound(opsPerRound, operation) / opsPerRound;
+    }
+    long bytes = allocatedBytes() - startBytes;
+    Arrays.sort(nanosPerOp);
+
+    String line = String.format(Locale.US,
+        "%-32s min %8.1f p50 %8.1f p90 %8.1f p99 %8.1f ns/op %8.1f bytes/op", name,
+        nanosPerOp[0], percentile(nanosPerOp, 50), percentile(nanosPerOp, 90),
+        percentile(nanosPerOp, 99),
+        startBytes < 0 ? -1.0 : (double) bytes / ((long) ROUNDS * opsPerRound));
+    System.out.println(line);
+    write(line);
+  }
+
+  private static long runRound(int ops, Operation operation) {
+    long startNanos = System.nanoTime();
+    for (int i = 0; i < ops; i++) {
+      operation.run(i);
+    }
+    return System.nanoTime() - startNanos;
+  }
+
+  /**
+   * Nearest rank percentile of sorted values.
+   */
+  private static double percentile(double[] sorted, int percent) {
+    int rank = (int) Math.ceil(percent / 100.0 * sorted.length);
+    return sorted[Math.max(0, rank - 1)];
+  }
+
+  private static void write(String line) throws IOException {
+    String dir = System.getProperty("playerview.benchmarkDir");
+    if (dir == null) return;
+    File file = new File(dir, "benchmarks.txt");
+    file.getParentFile().mkdirs();
+    Writer writer = new FileWriter(file, true);
+    try {
+      writer.write(line);
+      writer.write('\n');
+    } finally {
+      writer.close();
+    }
+  }
+
+  private static long allocatedBytes() {
+    ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+    if (!(bean instanceof com.sun.management.ThreadMXBean)) return -1;
+    com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+    if (!threads.isThreadAllocatedMemorySupported()) return -1;
+    return threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+  }
+}
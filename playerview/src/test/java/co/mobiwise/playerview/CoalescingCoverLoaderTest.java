@@ -0,0 +1,196 @@
+/*
+* Copyright (C) 2015 Mert Şimşek
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package co.mobiwise.playerview;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricGradleTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Fake delegate finishes loads when test tells it to. Context and bitmaps are only
+ * passed through, so they are null.
+ */
+@RunWith(RobolectricGradleTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 21)
+public class CoalescingCoverLoaderTest {
+
+  private static final String URL = "http://covers.example/album.jpg";
+
+  private FakeLoader mDelegate;
+  private CoalescingCoverLoader mLoader;
+
+  @Before public void setUp() {
+    mDelegate = new FakeLoader();
+    mLoader = new CoalescingCoverLoader(mDelegate);
+  }
+
+  @Test public void sameUrlAndWidthShareOneLoad() {
+    RecordingCallback first = new RecordingCallback();
+    RecordingCallback second = new RecordingCallback();
+    mLoader.load(null, URL, 300, first);
+    mLoader.load(null, URL, 300, second);
+
+    assertEquals(1, mDelegate.loads.size());
+    assertEquals(1, mLoader.getInFlightCount());
+
+    mDelegate.loads.get(0).finish();
+    assertEquals(1, first.loaded);
+    assertEquals(1, second.loaded);
+    assertEquals(0, mLoader.getInFlightCount());
+  }
+
+  @Test public void otherWidthIsAnotherLoad() {
+    mLoader.load(null, URL, 300, new RecordingCallback());
+    mLoader.load(null, URL, 600, new RecordingCallback());
+
+    assertEquals(2, mDelegate.loads.size());
+    assertEquals(2, mLoader.getInFlightCount());
+  }
+
+  @Test public void failureIsDeliveredToAllCallers() {
+    RecordingCallback first = new RecordingCallback();
+    RecordingCallback second = new RecordingCallback();
+    mLoader.load(null, URL, 300, first);
+    mLoader.load(null, URL, 300, second);
+
+    mDelegate.loads.get(0).fail();
+    assertEquals(1, first.failed);
+    assertEquals(1, second.failed);
+    assertEquals(0, mLoader.getInFlightCount());
+  }
+
+  @Test public void cancelledCallerIsNotNotified() {
+    RecordingCallback first = new RecordingCallback();
+    RecordingCallback second = new RecordingCallback();
+    CoverLoader.Request request = mLoader.load(null, URL, 300, first);
+    mLoader.load(null, URL, 300, second);
+
+    request.cancel();
+    assertFalse(mDelegate.loads.get(0).cancelled);
+
+    mDelegate.loads.get(0).finish();
+    assertEquals(0, first.loaded);
+    assertEquals(1, second.loaded);
+  }
+
+  @Test public void cancellingLastCallerCancelsDelegate() {
+    RecordingCallback first = new RecordingCallback();
+    RecordingCallback second = new RecordingCallback();
+    CoverLoader.Request firstRequest = mLoader.load(null, URL, 300, first);
+    CoverLoader.Request secondRequest = mLoader.load(null, URL, 300, second);
+
+    firstRequest.cancel();
+    secondRequest.cancel();
+    FakeLoad load = mDelegate.loads.get(0);
+    assertTrue(load.cancelled);
+    assertEquals(0, mLoader.getInFlightCount());
+
+    //A delegate which notifies anyway is ignored
+    load.finish();
+    assertEquals(0, first.loaded);
+    assertEquals(0, second.loaded);
+
+    //Next caller starts a new load
+    mLoader.load(null, URL, 300, new RecordingCallback());
+    assertEquals(2, mDelegate.loads.size());
+  }
+
+  @Test public void synchronousDelegateNotifiesBeforeLoadReturns() {
+    mDelegate.synchronous = true;
+    RecordingCallback callback = new RecordingCallback();
+    CoverLoader.Request request = mLoader.load(null, URL, 300, callback);
+
+    assertEquals(1, callback.loaded);
+    assertEquals(0, mLoader.getInFlightCount());
+
+    //Finished load is not cancelled, and next caller loads again
+    request.cancel();
+    assertFalse(mDelegate.loads.get(0).cancelled);
+    mLoader.load(null, URL, 300, new RecordingCallback());
+    assertEquals(2, mDelegate.loads.size());
+  }
+
+  @Test public void callerJoiningFinishedLoadStartsNewOne() {
+    mLoader.load(null, URL, 300, new RecordingCallback());
+    mDelegate.loads.get(0).finish();
+
+    RecordingCallback late = new RecordingCallback();
+    mLoader.load(null, URL, 300, late);
+    assertEquals(2, mDelegate.loads.size());
+    assertEquals(0, late.loaded);
+  }
+
+  private static final class FakeLoader implements CoverLoader {
+    final List<FakeLoad> loads = new ArrayList<FakeLoad>();
+    boolean synchronous;
+
+    @Override public Request load(Context context, String url, int targetWidth,
+        Callback callback) {
+      FakeLoad load = new FakeLoad(url, callback);
+      loads.add(load);
+      if (synchronous) load.finish();
+      return load;
+    }
+  }
+
+  private static final class FakeLoad implements CoverLoader.Request {
+    final String url;
+    final CoverLoader.Callback callback;
+    boolean cancelled;
+
+    FakeLoad(String url, CoverLoader.Callback callback) {
+      this.url = url;
+      this.callback = callback;
+    }
+
+    void finish() {
+      callback.onCoverLoaded(url, (Bitmap) null);
+    }
+
+    void fail() {
+      callback.onCoverFailed(url, new Exception("Not found"));
+    }
+
+    @Override public void cancel() {
+      cancelled = true;
+    }
+  }
+
+  private static final class RecordingCallback implements CoverLoader.Callback {
+    int loaded;
+    int failed;
+
+    @Override public void onCoverLoaded(String url, Bitmap bitmap) {
+      loaded++;
+    }
+
+    @Override public void onCoverFailed(String url, Exception e) {
+      failed++;
+    }
+  }
+}
@@ -0,0 +1,229 @@
+/*
+* Copyright (C) 2015 Mert Şimşek
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package co.mobiwise.playerview;
+
+import android.content.Context;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricGradleTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Player threads publish states while main thread runs and draws frames. Position,
+ * duration and button color are each published by one thread, so last value of every
+ * thread must win. Clock is paused, only applied states move progress.
+ */
+@RunWith(RobolectricGradleTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 21)
+public class ConcurrentUpdateTest {
+
+  private static final int SIDE = 480;
+  private static final int UPDATES = 2000;
+  private static final long SECOND_MS = 1000L;
+  private static final long DURATION_MS = 2 * UPDATES * SECOND_MS;
+  private static final int WARM_UP_FRAMES = 60;
+  private static final long TIMEOUT_SECONDS = 30;
+
+  private PlayerViewHarness mHarness;
+  private CountingPlayerView mView;
+  private PlayerViewStats mStats;
+
+  @Before public void setUp() {
+    mHarness = new PlayerViewHarness(SIDE, new PlayerViewHarness.ViewFactory() {
+      @Override public MusicPlayerView create(Context context) {
+        return new CountingPlayerView(context);
+      }
+    });
+    mView = (CountingPlayerView) mHarness.view;
+    mStats = new PlayerViewStats();
+    mView.setStats(mStats);
+    mView.stats = mStats;
+    mView.setPlaybackClock(new PlaybackClock(DURATION_MS));
+    mView.start();
+
+    //Play/pause morph invalidates button on its frames, it is over before counting
+    for (int i = 0; i < WARM_UP_FRAMES; i++) {
+      mHarness.frame();
+      mHarness.draw();
+    }
+    mView.resetCounts();
+  }
+
+  @After public void tearDown() {
+    mHarness.destroy();
+  }
+
+  @Test public void everyAppliedBatchInvalidatesOnce() throws InterruptedException {
+    final CountDownLatch start = new CountDownLatch(1);
+    final CountDownLatch done = new CountDownLatch(3);
+    runProducer(start, done, new Producer() {
+      @Override public PlayerState state(int i) {
+        return new PlayerState.Builder().setPositionMs(i * SECOND_MS).build();
+      }
+    });
+    //Duration gets shorter, but it stays longer than published positions
+    runProducer(start, done, new Producer() {
+      @Override public PlayerState state(int i) {
+        return new PlayerState.Builder().setDurationMs(DURATION_MS - i * SECOND_MS).build();
+      }
+    });
+    runProducer(start, done, new Producer() {
+      @Override public PlayerState state(int i) {
+        return new PlayerState.Builder().setButtonColor(buttonColor(i)).build();
+      }
+    });
+
+    start.countDown();
+    long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(TIMEOUT_SECONDS);
+    while (done.getCount() > 0) {
+      assertTrue("Producers timed out", System.nanoTime() < deadline);
+      mHarness.frame();
+      mHarness.draw();
+      assertTrue("Position " + mView.getPositionMs() + " is past " + mView.getDurationMs(),
+          mView.getPositionMs() <= mView.getDurationMs());
+    }
+    //States published after last frame
+    mHarness.frame();
+
+    assertEquals(UPDATES * SECOND_MS, mView.getPositionMs());
+    assertEquals(DURATION_MS - UPDATES * SECOND_MS, mView.getDurationMs());
+    assertEquals(buttonColor(UPDATES), mView.getStyle().buttonColor);
+
+    long applies = mStats.getStateApplyCount();
+    assertTrue(applies > 0 && applies <= 3 * UPDATES);
+    assertFalse("An applied state invalidated more than once", mView.invalidatedTwice);
+    //Every state changes seconds or color, so every batch is redrawn
+    assertEquals(applies, mView.invalidates);
+  }
+
+  @Test public void shorterDurationClampsPosition() {
+    mView.update(new PlayerState.Builder()
+        .setPositionMs(DURATION_MS / 2)
+        .build());
+    mView.update(new PlayerState.Builder()
+        .setDurationMs(DURATION_MS / 4)
+        .build());
+    mHarness.frame();
+
+    assertEquals(DURATION_MS / 4, mView.getPositionMs());
+    assertEquals(1, mStats.getStateApplyCount());
+    assertEquals(1, mView.invalidates);
+  }
+
+  @Test public void startAndStopOfOtherThreadAreAppliedOnMainThread()
+      throws InterruptedException {
+    runOnOtherThread(new Runnable() {
+      @Override public void run() {
+        mView.stop();
+      }
+    });
+    assertTrue(mView.isRotating());
+    mHarness.frame();
+    assertFalse(mView.isRotating());
+
+    runOnOtherThread(new Runnable() {
+      @Override public void run() {
+        mView.start();
+      }
+    });
+    assertFalse(mView.isRotating());
+    mHarness.frame();
+    assertTrue(mView.isRotating());
+    assertEquals(2, mStats.getStateApplyCount());
+  }
+
+  private static int buttonColor(int i) {
+    return 0xFF000000 | i;
+  }
+
+  private interface Producer {
+    PlayerState state(int i);
+  }
+
+  private void runProducer(final CountDownLatch start, final CountDownLatch done,
+      final Producer producer) {
+    new Thread(new Runnable() {
+      @Override public void run() {
+        try {
+          start.await();
+          for (int i = 1; i <= UPDATES; i++) {
+            mView.update(producer.state(i));
+          }
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        } finally {
+          done.countDown();
+        }
+      }
+    }).start();
+  }
+
+  private static void runOnOtherThread(Runnable runnable) throws InterruptedException {
+    Thread thread = new Thread(runnable);
+    thread.start();
+    thread.join(TimeUnit.SECONDS.toMillis(TIMEOUT_SECONDS));
+  }
+
+  /**
+   * Counts invalidates and checks that no applied state invalidates twice.
+   */
+  private static final class CountingPlayerView extends MusicPlayerView {
+
+    PlayerViewStats stats;
+    int invalidates;
+    boolean invalidatedTwice;
+    private long mLastApply = -1;
+
+    CountingPlayerView(Context context) {
+      super(context);
+    }
+
+    void resetCounts() {
+      stats.reset();
+      invalidates = 0;
+      invalidatedTwice = false;
+      mLastApply = -1;
+    }
+
+    @Override public void invalidate() {
+      record();
+      super.invalidate();
+    }
+
+    @Override public void invalidate(int l, int t, int r, int b) {
+      record();
+      super.invalidate(l, t, r, b);
+    }
+
+    private void record() {
+      if (stats == null) return;
+      long applies = stats.getStateApplyCount();
+      if (applies == mLastApply) invalidatedTwice = true;
+      mLastApply = applies;
+      invalidates++;
+    }
+  }
+}
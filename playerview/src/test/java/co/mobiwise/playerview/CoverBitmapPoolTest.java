@@ -0,0 +1,66 @@
+/*
+* Copyright (C) 2015 Mert Şimşek
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package co.mobiwise.playerview;
+
+import android.graphics.Bitmap;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricGradleTestRunner;
+import org.robolectric.annotation.Config;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+@RunWith(RobolectricGradleTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 21)
+public class CoverBitmapPoolTest {
+
+  @Before public void setUp() {
+    CoverBitmapPool.clear();
+  }
+
+  @Test public void pinnedBitmapIsPooledWhenUnpinned() {
+    Bitmap bitmap = CoverBitmapPool.own(createBitmap());
+    CoverBitmapPool.pin(bitmap);
+    CoverBitmapPool.pin(bitmap);
+
+    CoverBitmapPool.put(bitmap);
+    assertEquals(0, CoverBitmapPool.getSizeBytes());
+
+    CoverBitmapPool.unpin(bitmap);
+    assertEquals(0, CoverBitmapPool.getSizeBytes());
+
+    CoverBitmapPool.unpin(bitmap);
+    assertSame(bitmap, CoverBitmapPool.get(100, 100, Bitmap.Config.ARGB_8888));
+  }
+
+  @Test public void unpinWithoutPutPoolsNothing() {
+    Bitmap bitmap = CoverBitmapPool.own(createBitmap());
+    CoverBitmapPool.pin(bitmap);
+    CoverBitmapPool.unpin(bitmap);
+    assertEquals(0, CoverBitmapPool.getSizeBytes());
+
+    //Pin is gone, so put pools it now
+    CoverBitmapPool.put(bitmap);
+    assertSame(bitmap, CoverBitmapPool.get(100, 100, Bitmap.Config.ARGB_8888));
+  }
+
+  private static Bitmap createBitmap() {
+    return Bitmap.createBitmap(100, 100, Bitmap.Config.ARGB_8888);
+  }
+}
@@ -0,0 +1,67 @@
+/*
+* Copyright (C) 2015 Mert Şimşek
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package co.mobiwise.playerview;
+
+import android.graphics.Bitmap;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricGradleTestRunner;
+import org.robolectric.annotation.Config;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+@RunWith(RobolectricGradleTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 21)
+public class CoverCacheTest {
+
+  private static final String KEY = CoverCache.key("cover", 100, Bitmap.Config.ARGB_8888);
+
+  @Before public void setUp() {
+    CoverCache.setMaxBytes(CoverCache.getMaxBytes());
+    CoverCache.clear();
+  }
+
+  @Test public void acquireKeepsCachedEntry() {
+    Bitmap first = createBitmap();
+    CoverCache.Entry entry = CoverCache.acquire(KEY, first, null);
+
+    CoverCache.Entry again = CoverCache.acquire(KEY, createBitmap(), null);
+    assertSame(entry, again);
+    assertSame(first, again.bitmap);
+  }
+
+  @Test public void requestIsCountedOnce() {
+    assertNull(CoverCache.request(KEY));
+    CoverCache.Entry entry = CoverCache.acquire(KEY, createBitmap(), null);
+    assertSame(entry, CoverCache.request(KEY));
+
+    //Lookups which are not requests of a view do not count
+    CoverCache.acquire(KEY);
+    CoverCache.contains(KEY);
+    CoverCache.putIfAbsent(KEY, createBitmap());
+
+    assertEquals(1, CoverCache.getHitCount());
+    assertEquals(1, CoverCache.getMissCount());
+  }
+
+  private static Bitmap createBitmap() {
+    return Bitmap.createBitmap(100, 100, Bitmap.Config.ARGB_8888);
+  }
+}
@@ -0,0 +1,51 @@
+/*
+* Copyright (C) 2015 Mert Şimşek
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package co.mobiwise.playerview;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricGradleTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import static org.junit.Assert.assertEquals;
+
+@RunWith(RobolectricGradleTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 21)
+public class CoverDecoderTest {
+
+  private static final int WIDTH = 100;
+
+  @Test public void colorResourceIsDrawnAtTargetWidth() throws Exception {
+    Bitmap bitmap = decode(CoverSource.fromResource(android.R.color.black));
+    assertEquals(WIDTH, bitmap.getWidth());
+    assertEquals(WIDTH, bitmap.getHeight());
+  }
+
+  @Test public void drawableResourceIsDecodedAtTargetWidth() throws Exception {
+    Bitmap bitmap = decode(CoverSource.fromResource(R.drawable.icon_play));
+    assertEquals(WIDTH, bitmap.getWidth());
+  }
+
+  private static Bitmap decode(CoverSource source) throws Exception {
+    Context context = RuntimeEnvironment.application;
+    return CoverDecoder.decode(context, context.getTheme(), source, WIDTH,
+        Bitmap.Config.ARGB_8888);
+  }
+}
@@ -0,0 +1,131 @@
+/*
+* Copyright (C) 2015 Mert Şimşek
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package co.mobiwise.playerview;
+
+import android.content.Context;
+import android.view.ViewGroup;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricGradleTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Covers of a player come from local server through PicassoCoverLoader. Loader records
+ * loads and cancels of the view.
+ */
+@RunWith(RobolectricGradleTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 21)
+public class CoverRequestTest {
+
+  private static final int SIDE = 480;
+  private static final long SETTLE_MS = 500;
+
+  private CoverServer mServer;
+  private PlayerViewHarness mHarness;
+  private MusicPlayerView mView;
+  private PlayerViewStats mStats;
+  private RecordingLoader mLoader;
+
+  @Before public void setUp() throws Exception {
+    mServer = new CoverServer();
+    mHarness = new PlayerViewHarness(SIDE);
+    mView = mHarness.view;
+    mStats = new PlayerViewStats();
+    mView.setStats(mStats);
+    mLoader = new RecordingLoader(new PicassoCoverLoader());
+    mView.setCoverLoader(mLoader);
+  }
+
+  @After public void tearDown() throws Exception {
+    mHarness.destroy();
+    mServer.shutdown();
+  }
+
+  @Test public void newUrlCancelsPendingLoad() throws Exception {
+    String first = mServer.url("first.png");
+    String second = mServer.url("second.png");
+    mView.setCoverURL(first);
+    mView.setCoverURL(second);
+
+    assertEquals(Arrays.asList(first, second), mLoader.loads);
+    assertEquals(Arrays.asList(first), mLoader.cancels);
+
+    CoverServer.runUntil(new CoverServer.Condition() {
+      @Override public boolean isTrue() {
+        return mStats.getCoverBytes() > 0;
+      }
+    });
+    CoverServer.runFor(SETTLE_MS);
+    assertEquals(Arrays.asList(second), mLoader.delivered);
+  }
+
+  @Test public void detachCancelsPendingLoad() throws Exception {
+    String url = mServer.url("detached.png");
+    mView.setCoverURL(url);
+    ((ViewGroup) mView.getParent()).removeView(mView);
+
+    assertEquals(Arrays.asList(url), mLoader.cancels);
+    CoverServer.runFor(SETTLE_MS);
+    assertTrue(mLoader.delivered.isEmpty());
+    assertEquals(0, mStats.getLastCoverRequestNanos());
+  }
+
+  /**
+   * Passes loads to delegate and records what view asks and what reaches it.
+   */
+  private static final class RecordingLoader implements CoverLoader {
+    final List<String> loads = new ArrayList<String>();
+    final List<String> cancels = new ArrayList<String>();
+    final List<String> delivered = new ArrayList<String>();
+
+    private final CoverLoader mDelegate;
+
+    RecordingLoader(CoverLoader delegate) {
+      mDelegate = delegate;
+    }
+
+    @Override public Request load(Context context, final String url, int targetWidth,
+        final Callback callback) {
+      loads.add(url);
+      final Request request = mDelegate.load(context, url, targetWidth, new Callback() {
+        @Override public void onCoverLoaded(String loadedUrl, android.graphics.Bitmap bitmap) {
+          delivered.add(loadedUrl);
+          callback.onCoverLoaded(loadedUrl, bitmap);
+        }
+
+        @Override public void onCoverFailed(String failedUrl, Exception e) {
+          callback.onCoverFailed(failedUrl, e);
+        }
+      });
+      return new Request() {
+        @Override public void cancel() {
+          cancels.add(url);
+          request.cancel();
+        }
+      };
+    }
+  }
+}
@@ -0,0 +1,114 @@
+/*
+* Copyright (C) 2015 Mert Şimşek
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package co.mobiwise.playerview;
+
+import android.os.HandlerThread;
+import android.util.Base64;
+
+import com.squareup.okhttp.mockwebserver.Dispatcher;
+import com.squareup.okhttp.mockwebserver.MockResponse;
+import com.squareup.okhttp.mockwebserver.MockWebServer;
+import com.squareup.okhttp.mockwebserver.RecordedRequest;
+
+import org.robolectric.Shadows;
+import org.robolectric.shadows.ShadowLooper;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import okio.Buffer;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Local HTTP server of covers. Every path is a 1x1 png which is sent in about 200 ms,
+ * so a load is still pending when a test cancels it.
+ */
+final class CoverServer {
+
+  private static final String PNG_BASE64 =
+      "iVBORw0KGgoAAAANSUhEUgAAAAEAAAABCAYAAAAfFcSJAAAADUlEQVR42mNk+M9QDwADhgGAWjR9awAAAABJRU5ErkJggg==";
+  private static final String PICASSO_DISPATCHER = "Picasso-Dispatcher";
+  private static final long STEP_MS = 10;
+  private static final long TIMEOUT_MS = 10000;
+
+  interface Condition {
+    boolean isTrue();
+  }
+
+  private final MockWebServer mServer = new MockWebServer();
+
+  CoverServer() throws IOException {
+    final byte[] png = Base64.decode(PNG_BASE64, Base64.DEFAULT);
+    mServer.setDispatcher(new Dispatcher() {
+      @Override public MockResponse dispatch(RecordedRequest request) {
+        return new MockResponse()
+            .setHeader("Content-Type", "image/png")
+            .setBody(new Buffer().write(png))
+            .throttleBody(png.length / 4 + 1, 50, TimeUnit.MILLISECONDS);
+      }
+    });
+    mServer.start();
+  }
+
+  String url(String name) {
+    return mServer.url("/" + name).toString();
+  }
+
+  int getRequestCount() {
+    return mServer.getRequestCount();
+  }
+
+  void shutdown() throws IOException {
+    mServer.shutdown();
+  }
+
+  /**
+   * Runs loopers until condition is true. Fails after timeout.
+   */
+  static void runUntil(Condition condition) throws InterruptedException {
+    long deadline = System.currentTimeMillis() + TIMEOUT_MS;
+    while (!condition.isTrue()) {
+      assertTrue("Cover was not delivered", System.currentTimeMillis() < deadline);
+      step();
+    }
+  }
+
+  /**
+   * Runs loopers for a while, long enough for a cancelled load to arrive if it was not
+   * cancelled.
+   */
+  static void runFor(long ms) throws InterruptedException {
+    long end = System.currentTimeMillis() + ms;
+    while (System.currentTimeMillis() < end) {
+      step();
+    }
+  }
+
+  /**
+   * Robolectric runs messages of a background looper only when told to. Picasso
+   * dispatches from one, its results then come to main looper.
+   */
+  private static void step() throws InterruptedException {
+    for (Thread thread : Thread.getAllStackTraces().keySet()) {
+      if (thread instanceof HandlerThread && PICASSO_DISPATCHER.equals(thread.getName())) {
+        Shadows.shadowOf(((HandlerThread) thread).getLooper()).idle(STEP_MS);
+      }
+    }
+    ShadowLooper.idleMainLooper(STEP_MS);
+    Thread.sleep(STEP_MS);
+  }
+}
@@ -0,0 +1,131 @@
+/*
+* Copyright (C) 2015 Mert Şimşek
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package co.mobiwise.playerview;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricGradleTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Once a player is running, its frame loop must not allocate: rotating the cover,
+ * moving progress, drawing and toggling play/pause reuse objects made before.
+ */
+@RunWith(RobolectricGradleTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 21)
+public class FrameAllocationTest {
+
+  private static final int SIDE = 480;
+  private static final int FRAMES = 5000;
+  private static final int WARM_UP_FRAMES = 120;
+  private static final long DURATION_MS = 60 * 60 * 1000L;
+
+  private PlayerViewHarness mHarness;
+  private MusicPlayerView mView;
+
+  @Before public void setUp() {
+    mHarness = new PlayerViewHarness(SIDE);
+    mView = mHarness.view;
+    mView.setStats(new PlayerViewStats());
+    mView.setDurationMs(DURATION_MS);
+    mView.start();
+
+    //First frames build button paths, measure time texts and create toggle animator
+    mView.toggle();
+    runFrames(WARM_UP_FRAMES);
+    mView.toggle();
+    runFrames(WARM_UP_FRAMES);
+
+    assertTrue("Player must be animating", PlayerTicker.getInstance().getCallbackCount() > 0);
+  }
+
+  @After public void tearDown() {
+    mHarness.destroy();
+  }
+
+  @Test public void rotationFramesAllocateNothing() {
+    AllocationCounter counter = AllocationCounter.start();
+    runFrames(FRAMES);
+    counter.assertNone("Rotation frames");
+  }
+
+  @Test public void updateCoverRotateAllocatesNothing() {
+    AllocationCounter counter = AllocationCounter.start();
+    for (int i = 0; i < FRAMES; i++) {
+      mView.updateCoverRotate();
+    }
+    counter.assertNone("updateCoverRotate");
+  }
+
+  @Test public void progressUpdatesAllocateNothing() {
+    AllocationCounter counter = AllocationCounter.start();
+    for (int i = 0; i < FRAMES; i++) {
+      //Moves time texts by a second or more on every frame
+      mView.setPositionMs(i * 1700L % DURATION_MS);
+      mHarness.frame();
+      mHarness.draw();
+    }
+    counter.assertNone("Progress updates");
+  }
+
+  @Test public void playPauseTogglesAllocateNothing() {
+    AllocationCounter counter = AllocationCounter.start();
+    for (int i = 0; i < FRAMES; i++) {
+      if (i % 40 == 0) {
+        //What a click on button does in an app
+        if (mView.isRotating()) {
+          mView.stop();
+        } else {
+          mView.start();
+        }
+        mView.toggle();
+      }
+      mHarness.frame();
+      mHarness.draw();
+    }
+    counter.assertNone("Play/pause toggles");
+  }
+
+  @Test public void playPauseDrawableDrawAllocatesNothing() {
+    PlayPauseDrawable drawable = new PlayPauseDrawable(RuntimeEnvironment.application);
+    drawable.setBounds(0, 0, SIDE, SIDE);
+    Canvas canvas = new Canvas(Bitmap.createBitmap(SIDE, SIDE, Bitmap.Config.ARGB_8888));
+    drawable.draw(canvas);
+
+    AllocationCounter counter = AllocationCounter.start();
+    for (int i = 0; i <= FRAMES; i++) {
+      //Settled shapes at both ends, morph frames between them
+      drawable.setProgress((float) i / FRAMES);
+      drawable.draw(canvas);
+    }
+    counter.assertNone("PlayPauseDrawable.draw");
+  }
+
+  private void runFrames(int count) {
+    for (int i = 0; i < count; i++) {
+      mHarness.frame();
+      mHarness.draw();
+    }
+  }
+}
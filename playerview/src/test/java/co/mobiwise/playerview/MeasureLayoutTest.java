@@ -0,0 +1,93 @@
+/*
+* Copyright (C) 2015 Mert Şimşek
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package co.mobiwise.playerview;
+
+import android.graphics.Bitmap;
+import android.graphics.drawable.BitmapDrawable;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricGradleTestRunner;
+import org.robolectric.annotation.Config;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Parents measure and lay player out again and again at same size. Cover is scaled
+ * and its shader created only when size changes, so those passes do no bitmap work.
+ */
+@RunWith(RobolectricGradleTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 21)
+public class MeasureLayoutTest {
+
+  private static final int SIDE = 480;
+  private static final int PASSES = 1000;
+
+  private PlayerViewHarness mHarness;
+  private MusicPlayerView mView;
+  private PlayerViewStats mStats;
+
+  @Before public void setUp() {
+    mHarness = new PlayerViewHarness(SIDE);
+    mView = mHarness.view;
+    mStats = new PlayerViewStats();
+    mView.setStats(mStats);
+
+    Bitmap cover = Bitmap.createBitmap(2 * SIDE, 2 * SIDE, Bitmap.Config.ARGB_8888);
+    mView.setCoverDrawable(new BitmapDrawable(mView.getResources(), cover));
+    mHarness.layout(SIDE);
+    mHarness.draw();
+  }
+
+  @After public void tearDown() {
+    mHarness.destroy();
+  }
+
+  @Test public void sameSizeMeasureDoesNoBitmapWork() {
+    int poolHits = CoverBitmapPool.getHitCount();
+    int poolMisses = CoverBitmapPool.getMissCount();
+
+    AllocationCounter counter = AllocationCounter.start();
+    for (int i = 0; i < PASSES; i++) {
+      mHarness.layout(SIDE);
+    }
+    counter.assertNone("Same size measure and layout");
+
+    assertEquals("Bitmaps taken from pool", poolHits, CoverBitmapPool.getHitCount());
+    assertEquals("Bitmaps created by pool", poolMisses, CoverBitmapPool.getMissCount());
+  }
+
+  @Test public void sameSizeMeasureBuildsNoShader() {
+    long builds = mStats.getShaderBuildCount();
+    for (int i = 0; i < PASSES; i++) {
+      mHarness.layout(SIDE);
+      mView.requestLayout();
+      mHarness.layout(SIDE);
+    }
+    assertEquals(builds, mStats.getShaderBuildCount());
+  }
+
+  @Test public void newSizeBuildsShaderOnce() {
+    long builds = mStats.getShaderBuildCount();
+    mHarness.layout(SIDE / 2);
+    for (int i = 0; i < PASSES; i++) {
+      mHarness.layout(SIDE / 2);
+    }
+    assertEquals(builds + 1, mStats.getShaderBuildCount());
+  }
+}
@@ -0,0 +1,170 @@
+/*
+* Copyright (C) 2015 Mert Şimşek
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package co.mobiwise.playerview;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricGradleTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Every producer owns one field and sets it to 1, 2, 3 and so on, so a lost or
+ * reordered merge shows up as a field which goes back or misses its last value.
+ */
+@RunWith(RobolectricGradleTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 21)
+public class PendingPlayerStateTest {
+
+  private static final int STATES = 100000;
+  private static final long TIMEOUT_SECONDS = 30;
+
+  @Test public void mergeKeepsFieldsNotSetInNewer() {
+    PlayerState older = new PlayerState.Builder()
+        .setPositionMs(1000)
+        .setDurationMs(5000)
+        .setButtonColor(1)
+        .build();
+    PlayerState newer = new PlayerState.Builder()
+        .setPositionMs(2000)
+        .setPlaying(true)
+        .build();
+
+    PlayerState merged = older.merge(newer);
+    assertEquals(2000, merged.getPositionMs());
+    assertEquals(5000, merged.getDurationMs());
+    assertEquals(1, merged.getButtonColor());
+    assertTrue(merged.hasPlaying());
+    assertTrue(merged.isPlaying());
+    assertFalse(merged.hasTimeColor());
+    assertFalse(merged.hasProgressVisibility());
+  }
+
+  @Test public void firstOfferStartsBatch() {
+    PendingPlayerState pending = new PendingPlayerState();
+    assertNull(pending.take());
+
+    assertTrue(pending.offer(new PlayerState.Builder().setPositionMs(1).build()));
+    assertFalse(pending.offer(new PlayerState.Builder().setDurationMs(2).build()));
+    PlayerState batch = pending.take();
+    assertEquals(1, batch.getPositionMs());
+    assertEquals(2, batch.getDurationMs());
+    assertNull(pending.take());
+
+    assertTrue(pending.offer(new PlayerState.Builder().setTimeColor(3).build()));
+  }
+
+  @Test public void concurrentOffersAreNeverLost() throws Exception {
+    final PendingPlayerState pending = new PendingPlayerState();
+    final AtomicInteger batchesStarted = new AtomicInteger();
+    final AtomicReference<Throwable> producerError = new AtomicReference<Throwable>();
+    final CountDownLatch start = new CountDownLatch(1);
+    final CountDownLatch done = new CountDownLatch(5);
+
+    for (int field = 0; field < 5; field++) {
+      final int producerField = field;
+      Thread producer = new Thread(new Runnable() {
+        @Override public void run() {
+          try {
+            start.await();
+            for (int value = 1; value <= STATES; value++) {
+              if (pending.offer(state(producerField, value))) batchesStarted.incrementAndGet();
+            }
+          } catch (Throwable t) {
+            producerError.set(t);
+          } finally {
+            done.countDown();
+          }
+        }
+      }, "PendingPlayerStateTest-producer-" + field);
+      producer.start();
+    }
+
+    //Consumer takes batches as main thread does, while producers are still offering
+    long[] last = new long[5];
+    int batchesTaken = 0;
+    long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(TIMEOUT_SECONDS);
+    start.countDown();
+    while (true) {
+      boolean finished = done.getCount() == 0;
+      PlayerState batch = pending.take();
+      if (batch != null) {
+        batchesTaken++;
+        checkBatch(batch, last);
+      }
+      if (finished && batch == null) break;
+      assertTrue("Producers did not finish", System.nanoTime() < deadline);
+    }
+
+    if (producerError.get() != null) throw new AssertionError(producerError.get());
+    for (int field = 0; field < 5; field++) {
+      assertEquals("Last value of field " + field + " was lost", STATES, last[field]);
+    }
+    assertEquals("Batches started and taken differ", batchesStarted.get(), batchesTaken);
+  }
+
+  /**
+   * Field 4 sets both progress colors in one state, so they are always equal in a batch.
+   */
+  private static PlayerState state(int field, int value) {
+    PlayerState.Builder builder = new PlayerState.Builder();
+    switch (field) {
+      case 0:
+        builder.setPositionMs(value);
+        break;
+      case 1:
+        builder.setDurationMs(value);
+        break;
+      case 2:
+        builder.setButtonColor(value);
+        break;
+      case 3:
+        builder.setTimeColor(value);
+        break;
+      default:
+        builder.setProgressEmptyColor(value).setProgressLoadedColor(value);
+        break;
+    }
+    return builder.build();
+  }
+
+  private static void checkBatch(PlayerState batch, long[] last) {
+    if (batch.hasPositionMs()) last[0] = checkNewer(0, batch.getPositionMs(), last[0]);
+    if (batch.hasDurationMs()) last[1] = checkNewer(1, batch.getDurationMs(), last[1]);
+    if (batch.hasButtonColor()) last[2] = checkNewer(2, batch.getButtonColor(), last[2]);
+    if (batch.hasTimeColor()) last[3] = checkNewer(3, batch.getTimeColor(), last[3]);
+    assertEquals(batch.hasProgressEmptyColor(), batch.hasProgressLoadedColor());
+    if (batch.hasProgressEmptyColor()) {
+      assertEquals("Progress colors of one state were split", batch.getProgressEmptyColor(),
+          batch.getProgressLoadedColor());
+      last[4] = checkNewer(4, batch.getProgressEmptyColor(), last[4]);
+    }
+  }
+
+  private static long checkNewer(int field, long value, long last) {
+    assertTrue("Field " + field + " went from " + last + " to " + value, value > last);
+    return value;
+  }
+}
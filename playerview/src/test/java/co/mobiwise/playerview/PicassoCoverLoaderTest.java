@@ -0,0 +1,104 @@
+/*
+* Copyright (C) 2015 Mert Şimşek
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package co.mobiwise.playerview;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricGradleTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Skipping tracks fast loads and cancels covers one after another. Only cover of last
+ * track may be delivered.
+ */
+@RunWith(RobolectricGradleTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 21)
+public class PicassoCoverLoaderTest {
+
+  private static final int WIDTH = 100;
+  private static final int TRACKS = 5;
+  private static final long SETTLE_MS = 500;
+
+  private CoverServer mServer;
+  private Context mContext;
+  private PicassoCoverLoader mLoader;
+  private RecordingCallback mCallback;
+
+  @Before public void setUp() throws Exception {
+    mServer = new CoverServer();
+    mContext = RuntimeEnvironment.application;
+    mLoader = new PicassoCoverLoader();
+    mCallback = new RecordingCallback();
+  }
+
+  @After public void tearDown() throws Exception {
+    mServer.shutdown();
+  }
+
+  @Test public void skippedTracksAreNotDelivered() throws Exception {
+    CoverLoader.Request request = null;
+    for (int i = 0; i < TRACKS; i++) {
+      if (request != null) request.cancel();
+      request = mLoader.load(mContext, mServer.url("track" + i + ".png"), WIDTH, mCallback);
+    }
+
+    CoverServer.runUntil(new CoverServer.Condition() {
+      @Override public boolean isTrue() {
+        return !mCallback.loaded.isEmpty();
+      }
+    });
+    CoverServer.runFor(SETTLE_MS);
+
+    assertEquals(Arrays.asList(mServer.url("track" + (TRACKS - 1) + ".png")),
+        mCallback.loaded);
+    assertTrue(mCallback.failed.isEmpty());
+    assertTrue(mServer.getRequestCount() <= TRACKS);
+  }
+
+  @Test public void cancelledLoadIsNeverDelivered() throws Exception {
+    mLoader.load(mContext, mServer.url("cancelled.png"), WIDTH, mCallback).cancel();
+    CoverServer.runFor(SETTLE_MS);
+
+    assertTrue(mCallback.loaded.isEmpty());
+    assertTrue(mCallback.failed.isEmpty());
+  }
+
+  private static final class RecordingCallback implements CoverLoader.Callback {
+    final List<String> loaded = new ArrayList<String>();
+    final List<String> failed = new ArrayList<String>();
+
+    @Override public void onCoverLoaded(String url, Bitmap bitmap) {
+      loaded.add(url);
+    }
+
+    @Override public void onCoverFailed(String url, Exception e) {
+      failed.add(url);
+    }
+  }
+}
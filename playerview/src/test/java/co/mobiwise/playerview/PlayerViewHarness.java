@@ -0,0 +1,105 @@
+/*
+* Copyright (C) 2015 Mert Şimşek
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package co.mobiwise.playerview;
+
+import android.app.Activity;
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.view.View;
+import android.view.ViewGroup;
+
+import org.robolectric.Robolectric;
+import org.robolectric.shadows.ShadowChoreographer;
+import org.robolectric.shadows.ShadowLooper;
+import org.robolectric.util.ActivityController;
+
+/**
+ * Square MusicPlayerView attached to a visible activity. A frame moves main looper
+ * clock by one frame.
+ */
+final class PlayerViewHarness {
+
+  static final int FRAME_MS = 16;
+
+  /**
+   * Makes view of harness, tests use it for a subclass which records calls.
+   */
+  interface ViewFactory {
+    MusicPlayerView create(Context context);
+  }
+
+  final MusicPlayerView view;
+
+  private final ActivityController<Activity> mController;
+  private final Canvas mCanvas;
+  private int mSide;
+
+  PlayerViewHarness(int side) {
+    this(side, null);
+  }
+
+  PlayerViewHarness(int side, ViewFactory factory) {
+    //Robolectric runs frame callbacks at once by default, ticker would post itself forever
+    ShadowChoreographer.setPostFrameCallbackDelay(FRAME_MS);
+    mController = Robolectric.buildActivity(Activity.class).create();
+    view = factory != null ? factory.create(mController.get())
+        : new MusicPlayerView(mController.get());
+    mController.get().setContentView(view, new ViewGroup.LayoutParams(side, side));
+    mController.start().resume().visible();
+    layout(side);
+    mCanvas = new Canvas(Bitmap.createBitmap(side, side, Bitmap.Config.ARGB_8888));
+  }
+
+  /**
+   * Measures and lays view out at side. Same side again is what a parent does on
+   * every layout pass which does not change our size.
+   */
+  void layout(int side) {
+    mSide = side;
+    int spec = View.MeasureSpec.makeMeasureSpec(side, View.MeasureSpec.EXACTLY);
+    view.measure(spec, spec);
+    view.layout(0, 0, side, side);
+  }
+
+  int getSide() {
+    return mSide;
+  }
+
+  /**
+   * Runs one frame, which rotates cover and moves progress of animating views. States
+   * posted to main thread before are applied too.
+   */
+  void frame() {
+    ShadowLooper.idleMainLooper(FRAME_MS);
+  }
+
+  /**
+   * Draws view with its children into a software canvas.
+   */
+  void draw() {
+    view.draw(mCanvas);
+  }
+
+  /**
+   * Called from @After of every test. Ticker is static and Robolectric keeps classes
+   * between tests, so it is reset with Choreographer it holds.
+   */
+  void destroy() {
+    mController.pause().stop().destroy();
+    PlayerTicker.reset();
+  }
+}
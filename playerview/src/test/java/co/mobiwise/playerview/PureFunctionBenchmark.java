@@ -0,0 +1,75 @@
+/*
+* Copyright (C) 2015 Mert Şimşek
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package co.mobiwise.playerview;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricGradleTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.io.IOException;
+
+/**
+ * Hot helpers of frame loop and cover decoding which have no Android state.
+ */
+@RunWith(RobolectricGradleTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 21)
+public class PureFunctionBenchmark {
+
+  private static final int OPS_PER_ROUND = 50000;
+
+  private final char[] mChars = new char[16];
+
+  /**
+   * Keeps results alive, so JIT can not remove measured code.
+   */
+  private long mSink;
+
+  @Before public void setUp() {
+    Benchmarks.assumeEnabled();
+  }
+
+  @Test public void secondsToTime() throws IOException {
+    Benchmarks.run("secondsToTime mm:ss", OPS_PER_ROUND, new Benchmarks.Operation() {
+      @Override public void run(int index) {
+        mSink += MusicPlayerView.secondsToTime(index % 3600, mChars);
+      }
+    });
+    Benchmarks.run("secondsToTime h:mm:ss", OPS_PER_ROUND, new Benchmarks.Operation() {
+      @Override public void run(int index) {
+        mSink += MusicPlayerView.secondsToTime(3600 + index % 360000, mChars);
+      }
+    });
+  }
+
+  @Test public void calculatePastProgressDegree() throws IOException {
+    Benchmarks.run("calculatePastProgressDegree", OPS_PER_ROUND, new Benchmarks.Operation() {
+      @Override public void run(int index) {
+        mSink += (long) MusicPlayerView.calculatePastProgressDegree(index, 3600000L);
+      }
+    });
+  }
+
+  @Test public void calculateInSampleSize() throws IOException {
+    Benchmarks.run("calculateInSampleSize", OPS_PER_ROUND, new Benchmarks.Operation() {
+      @Override public void run(int index) {
+        int side = 256 + index % 4096;
+        mSink += CoverDecoder.calculateInSampleSize(side, side, 480);
+      }
+    });
+  }
+}
@@ -0,0 +1,159 @@
+/*
+* Copyright (C) 2015 Mert Şimşek
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package co.mobiwise.playerview;
+
+import android.os.SystemClock;
+import android.util.DisplayMetrics;
+import android.view.MotionEvent;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricGradleTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Player is 480 px, so arc radius is 220 px and cover radius 165 px. Arc starts at
+ * 145 degrees and is 250 degrees long.
+ */
+@RunWith(RobolectricGradleTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 21)
+public class SeekTouchTest {
+
+  private static final int SIDE = 480;
+  private static final float CENTER = SIDE / 2f;
+  private static final float ARC_RADIUS = SIDE / 2f - 20f;
+  private static final long DURATION_MS = 250000L;
+  private static final int DRAG_FRAMES = 60;
+
+  private PlayerViewHarness mHarness;
+  private MusicPlayerView mView;
+  private RecordingSeekListener mListener;
+  private float mDensity;
+
+  @Before public void setUp() {
+    mHarness = new PlayerViewHarness(SIDE);
+    mView = mHarness.view;
+    mDensity = getDisplayMetrics().density;
+    mView.setDurationMs(DURATION_MS);
+    mHarness.frame();
+    mListener = new RecordingSeekListener();
+    mView.setOnSeekListener(mListener);
+  }
+
+  @After public void tearDown() {
+    //Display metrics are shared by tests
+    getDisplayMetrics().density = mDensity;
+    mHarness.destroy();
+  }
+
+  @Test public void cancelDeliversLastDraggedPosition() {
+    //Top of arc is half way, right end of horizontal diameter is 215 degrees into arc
+    touch(MotionEvent.ACTION_DOWN, CENTER, CENTER - ARC_RADIUS);
+    touch(MotionEvent.ACTION_MOVE, CENTER + ARC_RADIUS, CENTER);
+    //Cancel comes at bottom, in the gap under arc, which maps to an arc end
+    touch(MotionEvent.ACTION_CANCEL, CENTER, CENTER + ARC_RADIUS);
+
+    assertFalse(mView.isSeeking());
+    assertEquals(DURATION_MS * 215 / 250, mListener.finishedMs);
+    assertEquals(DURATION_MS * 215 / 250, mView.getPositionMs());
+  }
+
+  @Test public void upDeliversItsOwnPosition() {
+    touch(MotionEvent.ACTION_DOWN, CENTER, CENTER - ARC_RADIUS);
+    touch(MotionEvent.ACTION_UP, CENTER + ARC_RADIUS, CENTER);
+    assertEquals(DURATION_MS * 215 / 250, mListener.finishedMs);
+  }
+
+  @Test public void slopStopsHalfWayToCover() {
+    //24 dp is 72 px at this density, more than half of 55 px gap between cover and arc
+    getDisplayMetrics().density = 3f;
+
+    touch(MotionEvent.ACTION_DOWN, CENTER, CENTER - (ARC_RADIUS - 30f));
+    assertFalse("Touch near cover started seek", mView.isSeeking());
+    touch(MotionEvent.ACTION_UP, CENTER, CENTER - (ARC_RADIUS - 30f));
+
+    touch(MotionEvent.ACTION_DOWN, CENTER, CENTER - (ARC_RADIUS - 25f));
+    assertTrue("Touch in slop of arc did not start seek", mView.isSeeking());
+  }
+
+  @Test public void dragSendsAtMostOneSeekPerInterval() {
+    //Drag from top of arc to right end of horizontal diameter, one move per frame
+    touch(MotionEvent.ACTION_DOWN, CENTER, CENTER - ARC_RADIUS);
+    for (int i = 1; i <= DRAG_FRAMES; i++) {
+      double angle = Math.toRadians(-90 + 90.0 * i / DRAG_FRAMES);
+      touch(MotionEvent.ACTION_MOVE, CENTER + ARC_RADIUS * (float) Math.cos(angle),
+          CENTER + ARC_RADIUS * (float) Math.sin(angle));
+      mHarness.frame();
+    }
+    touch(MotionEvent.ACTION_UP, CENTER + ARC_RADIUS, CENTER);
+
+    long dragMs = DRAG_FRAMES * PlayerViewHarness.FRAME_MS;
+    assertFalse(mListener.seekTimesMs.isEmpty());
+    assertTrue(mListener.seekTimesMs.size()
+        <= dragMs / MusicPlayerView.SEEK_DISPATCH_INTERVAL_MS + 1);
+    for (int i = 1; i < mListener.seekTimesMs.size(); i++) {
+      assertTrue(mListener.seekTimesMs.get(i) - mListener.seekTimesMs.get(i - 1)
+          >= MusicPlayerView.SEEK_DISPATCH_INTERVAL_MS);
+    }
+    assertEquals(DURATION_MS * 215 / 250, mListener.finishedMs);
+  }
+
+  @Test public void cancelRightAfterThrottledSeekDeliversFinalPosition() {
+    touch(MotionEvent.ACTION_DOWN, CENTER, CENTER - ARC_RADIUS);
+    touch(MotionEvent.ACTION_MOVE, CENTER - ARC_RADIUS, CENTER);
+    mHarness.frame();
+    //Throttled, no frame passes before cancel
+    touch(MotionEvent.ACTION_MOVE, CENTER + ARC_RADIUS, CENTER);
+    touch(MotionEvent.ACTION_CANCEL, CENTER + ARC_RADIUS, CENTER);
+
+    assertEquals(DURATION_MS * 215 / 250, mListener.finishedMs);
+  }
+
+  private DisplayMetrics getDisplayMetrics() {
+    return mView.getResources().getDisplayMetrics();
+  }
+
+  private void touch(int action, float x, float y) {
+    MotionEvent event = MotionEvent.obtain(0, 0, action, x, y, 0);
+    mView.onTouchEvent(event);
+    event.recycle();
+  }
+
+  private static final class RecordingSeekListener implements OnSeekListener {
+    final List<Long> seekTimesMs = new ArrayList<Long>();
+    long finishedMs = -1;
+
+    @Override public void onSeekStarted(long positionMs) {
+    }
+
+    @Override public void onSeek(long positionMs) {
+      seekTimesMs.add(SystemClock.uptimeMillis());
+    }
+
+    @Override public void onSeekFinished(long positionMs) {
+      finishedMs = positionMs;
+    }
+  }
+}
@@ -0,0 +1,173 @@
+/*
+* Copyright (C) 2015 Mert Şimşek
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package co.mobiwise.playerview;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricGradleTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.Arrays;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Producer writes frames whose every bin is the frame number, so a torn frame has
+ * different bins and an old frame has a smaller number.
+ */
+@RunWith(RobolectricGradleTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 21)
+public class SpectrumBufferTest {
+
+  private static final int BINS = 64;
+  private static final int FRAMES = 200000;
+  private static final long TIMEOUT_SECONDS = 30;
+
+  @Test public void readLatestSkipsToNewestFrame() {
+    SpectrumBuffer buffer = new SpectrumBuffer(BINS);
+    float[] out = new float[BINS];
+    assertFalse(buffer.readLatest(out));
+
+    for (int frame = 1; frame <= 3; frame++) {
+      buffer.write(frame(frame));
+    }
+    assertTrue(buffer.readLatest(out));
+    assertFrame(3, out);
+    assertFalse(buffer.hasNewFrame());
+    assertFalse(buffer.readLatest(out));
+  }
+
+  @Test public void concurrentReadsAreNeverTornOrOld() throws Exception {
+    final SpectrumBuffer buffer = new SpectrumBuffer(BINS);
+    final AtomicReference<Throwable> producerError = new AtomicReference<Throwable>();
+    Thread producer = startProducer(buffer, producerError);
+
+    float[] out = new float[BINS];
+    int last = -1;
+    int reads = 0;
+    long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(TIMEOUT_SECONDS);
+    while (last < FRAMES - 1) {
+      assertTrue("Newest frame was not delivered", System.nanoTime() < deadline);
+      if (!buffer.readLatest(out)) continue;
+      int frame = (int) out[0];
+      assertFrame(frame, out);
+      assertTrue("Frame " + frame + " read after " + last, frame > last);
+      last = frame;
+      reads++;
+    }
+
+    producer.join();
+    if (producerError.get() != null) throw new AssertionError(producerError.get());
+    assertFalse(buffer.readLatest(out));
+    assertTrue(reads > 0);
+  }
+
+  @Test public void wakeupIsNeverLost() throws Exception {
+    final SpectrumBuffer buffer = new SpectrumBuffer(BINS);
+    final Semaphore wakeups = new Semaphore(0);
+    final AtomicInteger listenerCalls = new AtomicInteger();
+    buffer.setOnFrameAvailableListener(new SpectrumBuffer.OnFrameAvailableListener() {
+      @Override public void onFrameAvailable(SpectrumBuffer b) {
+        listenerCalls.incrementAndGet();
+        wakeups.release();
+      }
+    });
+    final AtomicReference<Throwable> producerError = new AtomicReference<Throwable>();
+    Thread producer = startProducer(buffer, producerError);
+
+    //Consumer parks as view does when it stops polling, producer must wake it up
+    float[] out = new float[BINS];
+    int last = -1;
+    int requests = 0;
+    while (true) {
+      while (buffer.readLatest(out)) {
+        assertFrame((int) out[0], out);
+        last = (int) out[0];
+      }
+      if (last == FRAMES - 1) break;
+      requests++;
+      if (buffer.requestWakeup()) continue;
+      assertTrue("Wakeup lost after frame " + last,
+          wakeups.tryAcquire(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+    }
+
+    producer.join();
+    if (producerError.get() != null) throw new AssertionError(producerError.get());
+    //Listener is called only for frames after a wakeup request, at most once per request
+    assertTrue(listenerCalls.get() <= requests);
+  }
+
+  @Test public void listenerIsCalledOncePerRequest() {
+    SpectrumBuffer buffer = new SpectrumBuffer(BINS);
+    final AtomicInteger calls = new AtomicInteger();
+    buffer.setOnFrameAvailableListener(new SpectrumBuffer.OnFrameAvailableListener() {
+      @Override public void onFrameAvailable(SpectrumBuffer b) {
+        calls.incrementAndGet();
+      }
+    });
+
+    buffer.write(frame(0));
+    assertEquals(0, calls.get());
+
+    //Frame is already there, consumer must read instead of waiting
+    assertTrue(buffer.requestWakeup());
+    buffer.readLatest(new float[BINS]);
+
+    assertFalse(buffer.requestWakeup());
+    buffer.write(frame(1));
+    buffer.write(frame(2));
+    assertEquals(1, calls.get());
+  }
+
+  private static Thread startProducer(final SpectrumBuffer buffer,
+      final AtomicReference<Throwable> error) {
+    Thread producer = new Thread(new Runnable() {
+      @Override public void run() {
+        try {
+          float[] magnitudes = new float[BINS];
+          for (int frame = 0; frame < FRAMES; frame++) {
+            Arrays.fill(magnitudes, frame);
+            buffer.write(magnitudes);
+            //Let consumer park sometimes
+            if (frame % 1000 == 0) Thread.sleep(1);
+          }
+        } catch (Throwable t) {
+          error.set(t);
+        }
+      }
+    }, "SpectrumBufferTest-producer");
+    producer.start();
+    return producer;
+  }
+
+  private static float[] frame(int number) {
+    float[] magnitudes = new float[BINS];
+    Arrays.fill(magnitudes, number);
+    return magnitudes;
+  }
+
+  private static void assertFrame(int number, float[] frame) {
+    for (int bin = 0; bin < BINS; bin++) {
+      assertEquals("Torn frame, bin " + bin, number, frame[bin], 0f);
+    }
+  }
+}
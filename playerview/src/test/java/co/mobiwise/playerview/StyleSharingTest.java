@@ -0,0 +1,183 @@
+/*
+* Copyright (C) 2015 Mert Şimşek
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package co.mobiwise.playerview;
+
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.graphics.RectF;
+import android.view.View;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricGradleTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Many players in a list share paints of their theme, while button region and
+ * play/pause state stay per view.
+ */
+@RunWith(RobolectricGradleTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 21)
+public class StyleSharingTest {
+
+  private static final int VIEW_COUNT = 100;
+  private static final int MIN_SIDE = 300;
+
+  /**
+   * Before styles, time, empty, loaded and button paints were static fields. All views
+   * held these four paints, but a color set on one view was set on all of them.
+   */
+  private static final int BASELINE_STATIC_PAINTS = 4;
+
+  /**
+   * Spectrum paint and play/pause icon paint, which every view has.
+   */
+  private static final int PAINTS_PER_VIEW = 2;
+
+  private static final String PAINT_TYPE = "android/graphics/Paint";
+
+  private final MusicPlayerView[] mViews = new MusicPlayerView[VIEW_COUNT];
+
+  @Before public void setUp() {
+    for (int i = 0; i < VIEW_COUNT; i++) {
+      MusicPlayerView view = new MusicPlayerView(RuntimeEnvironment.application);
+      //Every view has another size, so another button region
+      int side = MIN_SIDE + 2 * i;
+      int spec = View.MeasureSpec.makeMeasureSpec(side, View.MeasureSpec.EXACTLY);
+      view.measure(spec, spec);
+      view.layout(0, 0, side, side);
+      mViews[i] = view;
+    }
+  }
+
+  @Test public void sameThemeSharesOneStyle() {
+    PlayerStyle style = mViews[0].getStyle();
+    for (MusicPlayerView view : mViews) {
+      assertSame(style, view.getStyle());
+    }
+  }
+
+  @Test public void changedThemeGetsOtherStyle() {
+    PlayerStyle style = mViews[0].getStyle();
+    for (int i = 0; i < VIEW_COUNT; i += 2) {
+      mViews[i].setButtonColor(Color.RED);
+    }
+
+    PlayerStyle red = mViews[0].getStyle();
+    assertNotSame(style, red);
+    for (int i = 0; i < VIEW_COUNT; i++) {
+      assertSame(i % 2 == 0 ? red : style, mViews[i].getStyle());
+    }
+  }
+
+  @Test public void buttonRegionsArePerView() {
+    for (int i = 0; i < VIEW_COUNT; i++) {
+      int side = MIN_SIDE + 2 * i;
+      Rect bounds = mViews[i].getButtonRegion().getBounds();
+      assertEquals(side / 2, bounds.centerX(), 1);
+      assertEquals(side / 8, bounds.width() / 2, 1);
+      for (int j = 0; j < i; j++) {
+        assertNotSame(mViews[j].getButtonRegion(), mViews[i].getButtonRegion());
+      }
+    }
+  }
+
+  @Test public void pauseBarStateIsPerView() {
+    for (int i = 0; i < VIEW_COUNT; i += 3) {
+      mViews[i].toggle();
+    }
+
+    for (int i = 0; i < VIEW_COUNT; i++) {
+      assertEquals("View " + i, i % 3 == 0, mViews[i].getPlayPauseDrawable().isPlay());
+      for (int j = 0; j < i; j++) {
+        assertNotSame(mViews[j].getPlayPauseDrawable(), mViews[i].getPlayPauseDrawable());
+      }
+    }
+  }
+
+  @Test public void sameThemeHoldsAsManyPaintsAsStaticFields() {
+    assertEquals(BASELINE_STATIC_PAINTS, countStylePaints());
+
+    //Baseline constructor created its four static paints again for every view
+    AllocationCounter counter = AllocationCounter.start();
+    new MusicPlayerView(RuntimeEnvironment.application);
+    counter.stop();
+    assertEquals(PAINTS_PER_VIEW, counter.getCount(PAINT_TYPE));
+  }
+
+  @Test public void changingOneViewLeavesPaintsAndRectsOfOthers() {
+    PlayerStyle style = mViews[1].getStyle();
+    int[] colors = {
+        style.buttonPaint.getColor(), style.progressEmptyPaint.getColor(),
+        style.progressLoadedPaint.getColor(), style.timePaint.getColor()
+    };
+    RectF[] arcs = new RectF[VIEW_COUNT];
+    Rect[] buttons = new Rect[VIEW_COUNT];
+    for (int i = 1; i < VIEW_COUNT; i++) {
+      arcs[i] = new RectF(mViews[i].getArcRect());
+      buttons[i] = mViews[i].getButtonRegion().getBounds();
+    }
+
+    MusicPlayerView changed = mViews[0];
+    changed.setButtonColor(Color.RED);
+    changed.setProgressEmptyColor(Color.GREEN);
+    changed.setProgressLoadedColor(Color.BLUE);
+    changed.setTimeColor(Color.YELLOW);
+    int side = 4 * MIN_SIDE;
+    int spec = View.MeasureSpec.makeMeasureSpec(side, View.MeasureSpec.EXACTLY);
+    changed.measure(spec, spec);
+    changed.layout(0, 0, side, side);
+
+    assertEquals(Color.RED, changed.getStyle().buttonPaint.getColor());
+    assertEquals(side / 2, changed.getButtonRegion().getBounds().centerX(), 1);
+    for (int i = 1; i < VIEW_COUNT; i++) {
+      PlayerStyle other = mViews[i].getStyle();
+      assertSame(style, other);
+      assertEquals(colors[0], other.buttonPaint.getColor());
+      assertEquals(colors[1], other.progressEmptyPaint.getColor());
+      assertEquals(colors[2], other.progressLoadedPaint.getColor());
+      assertEquals(colors[3], other.timePaint.getColor());
+      assertEquals("View " + i, arcs[i], mViews[i].getArcRect());
+      assertEquals("View " + i, buttons[i], mViews[i].getButtonRegion().getBounds());
+    }
+  }
+
+  /**
+   * Different paint objects of all views' styles.
+   */
+  private int countStylePaints() {
+    Set<Paint> paints = Collections.newSetFromMap(new IdentityHashMap<Paint, Boolean>());
+    for (MusicPlayerView view : mViews) {
+      PlayerStyle style = view.getStyle();
+      paints.add(style.buttonPaint);
+      paints.add(style.progressEmptyPaint);
+      paints.add(style.progressLoadedPaint);
+      paints.add(style.timePaint);
+    }
+    return paints.size();
+  }
+}